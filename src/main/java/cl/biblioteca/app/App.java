@@ -1,8 +1,20 @@
 package cl.biblioteca.app;
 
+import cl.biblioteca.persistencia.JpaUtil;
+import cl.biblioteca.servicio.IndiceDisponibilidad;
+import cl.biblioteca.servicio.LibroMultas;
+import cl.biblioteca.servicio.ServicioBusqueda;
+import cl.biblioteca.web.MetricasRutas;
 import cl.biblioteca.web.Rutas;
 import io.javalin.Javalin;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Punto de entrada de la aplicación de Biblioteca (sistema legado).
  *
@@ -21,6 +33,13 @@ import io.javalin.Javalin;
  * <code>src/main/resources/public</code> queden accesibles vía URL con ese prefijo.
  * </p>
  *
+ * <h2>Arranque</h2>
+ * <p>
+ * El servidor empieza a escuchar antes de que JPA esté listo; la base de datos se prepara en
+ * segundo plano (ver {@link #main(String[])}). Con {@code -Dbiblioteca.perfil=produccion} el
+ * esquema se valida en lugar de recrearse (ver {@link JpaUtil}).
+ * </p>
+ *
  * <h2>Rutas</h2>
  * <p>
  * La clase {@link cl.biblioteca.web.Rutas} define endpoints como
@@ -31,16 +50,38 @@ import io.javalin.Javalin;
  */
 public class App {
 
+    /** Puerto HTTP: propiedad de sistema {@code biblioteca.puerto} (por defecto 7070). */
+    private static final int PUERTO = Integer.getInteger("biblioteca.puerto", 7070);
+
+    /**
+     * Con {@code -Dbiblioteca.cds.entrenamiento=true} la aplicación arranca en un puerto libre,
+     * ejercita algunas rutas y termina. Lo usa el perfil Maven {@code produccion} para generar
+     * el archivo AppCDS con las clases que carga un arranque real.
+     */
+    private static final boolean ENTRENAMIENTO_CDS = Boolean.getBoolean("biblioteca.cds.entrenamiento");
+
+    /** Rutas que ejercita la corrida de entrenamiento de AppCDS. */
+    private static final List<String> RUTAS_ENTRENAMIENTO = List.of(
+            "/api/ready", "/api/inventory", "/api/inventory?limit=2", "/api/inventory/stats",
+            "/api/inventory/search?q=clean", "/api/fees/1?descuentoPremium=1", "/api/members/1/summary",
+            "/api/loans/overdue", "/public/index.html");
+
     /**
      * Arranca el servidor HTTP, publica los archivos estáticos y registra las rutas de la aplicación.
      *
-     * <p>El servidor queda escuchando en <code>http://localhost:7070</code>.
+     * <p>El servidor queda escuchando en <code>http://localhost:7070</code> de inmediato; JPA
+     * (esquema, {@code EntityManagerFactory}) y los índices en memoria se preparan en un hilo
+     * de fondo. Mientras tanto las rutas <code>/api/*</code> responden <code>503</code> y
+     * <code>GET /api/ready</code> informa el estado del arranque.
      * Para detenerlo de forma programática, puede invocarse {@code app.stop()} o integrar
      * un shutdown hook si se requiere liberación de recursos adicional.</p>
      *
      * @param args argumentos de línea de comandos (no utilizados).
      */
     public static void main(String[] args) {
+        CompletableFuture<Void> arranque = CompletableFuture.runAsync(App::prepararDatos,
+                tarea -> new Thread(tarea, "arranque-datos").start());
+
         Javalin app = Javalin.create(cfg -> {
             // Publica archivos estáticos empaquetados en src/main/resources/public
             cfg.staticFiles.add(s -> {
@@ -48,11 +89,60 @@ public class App {
                 s.location = io.javalin.http.staticfiles.Location.CLASSPATH;
                 s.hostedPath = "/public"; // expone /public/index.html
             });
-        }).start(7070);
+        });
 
-        // Registra endpoints de la API y la redirección inicial
+        // Latencia por ruta, disponibilidad (/api/ready), endpoints de la API y la redirección inicial
+        MetricasRutas.registrar(app);
+        Rutas.registrarDisponibilidad(app, arranque);
         Rutas.registrar(app);
+        app.start(ENTRENAMIENTO_CDS ? 0 : PUERTO);
+
+        System.out.println("Legacy Library running at http://localhost:" + app.port());
+
+        if (ENTRENAMIENTO_CDS) entrenarYSalir(app, arranque);
+    }
+
+    /**
+     * Prepara la base de datos y los índices; corre en segundo plano mientras Javalin arranca.
+     * Si falla, la excepción queda en el futuro de arranque y la informa {@code GET /api/ready}.
+     */
+    private static void prepararDatos() {
+        long inicio = System.nanoTime();
+        JpaUtil.iniciar();
+
+        // Índice de búsqueda de texto completo (tabla FTS5 + triggers de sincronización)
+        ServicioBusqueda.prepararIndice();
+
+        // Índice en memoria de materiales prestados (préstamos abiertos)
+        IndiceDisponibilidad.cargar();
+
+        // Libro de multas devengadas y su corrida nocturna
+        LibroMultas.prepararTabla();
+        LibroMultas.programar();
+
+        System.out.printf("Datos listos en %d ms (perfil %s)%n",
+                (System.nanoTime() - inicio) / 1_000_000, JpaUtil.PERFIL);
+    }
 
-        System.out.println("Legacy Library running at http://localhost:7070");
+    /** Espera el arranque, recorre {@link #RUTAS_ENTRENAMIENTO} y termina la JVM. */
+    private static void entrenarYSalir(Javalin app, CompletableFuture<Void> arranque) {
+        int codigo = 0;
+        try {
+            arranque.join();
+            HttpClient http = HttpClient.newHttpClient();
+            for (String ruta : RUTAS_ENTRENAMIENTO) {
+                HttpResponse<Void> r = http.send(
+                        HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + ruta)).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                System.out.println("Entrenamiento CDS: " + ruta + " -> " + r.statusCode());
+            }
+        } catch (Exception e) {
+            System.err.println("Entrenamiento CDS fallido: " + e);
+            codigo = 1;
+        } finally {
+            app.stop();
+            JpaUtil.close();
+        }
+        System.exit(codigo);
     }
 }
@@ -2,6 +2,8 @@ package cl.biblioteca.dominio;
 
 import cl.biblioteca.servicio.visitor.VisitanteMaterial;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entidad de dominio que representa un <strong>Libro</strong> en el catálogo de la biblioteca.
@@ -14,6 +16,8 @@ import jakarta.persistence.*;
  * <ul>
  *   <li>La clase está anotada con {@link Entity} para que JPA/Hibernate la mapee a una tabla.</li>
  *   <li>Los campos de esta clase se persisten junto con los heredados desde {@code MaterialBiblioteca}.</li>
+ *   <li>Se guarda en la caché de segundo nivel (región {@code libros}, ver {@code cache.conf}):
+ *       buscarlo de nuevo por id no consulta SQLite.</li>
  * </ul>
  *
  * <h2>Invariantes</h2>
@@ -23,6 +27,8 @@ import jakarta.persistence.*;
  * </ul>
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "libros")
 public class Libro extends MaterialBiblioteca {
 
     /**
@@ -0,0 +1,127 @@
+package cl.biblioteca.dominio;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.hibernate.annotations.Synchronize;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Vista de solo lectura que unifica el catálogo completo ({@link Libro}, {@link Revista} y
+ * {@link Video}) en una sola relación consultable.
+ *
+ * <p>
+ * Como {@link MaterialBiblioteca} es una superclase mapeada, cada tipo vive en su propia tabla
+ * y sus identificadores se repiten entre tablas. Esta entidad se define sobre un
+ * {@code UNION ALL} de las tres tablas y se identifica por el par {@code (tipo, id)}, el mismo
+ * que usa {@link Prestamo} para referirse a un material. Permite contar y agregar sobre todo
+ * el catálogo con <em>una</em> consulta. Como es un {@code UNION ALL}, SQLite la recorre
+ * completa y, si se pide un orden, la ordena completa; por eso el listado, la transmisión y
+ * la paginación del inventario consultan las tablas base por su clave primaria.
+ * </p>
+ *
+ * <h2>Persistencia</h2>
+ * <ul>
+ *   <li>Mapeada con {@link Subselect}: no genera tabla propia ni admite escrituras ({@link Immutable}).</li>
+ *   <li>{@link Synchronize} asegura que Hibernate vacíe cambios pendientes de las tablas base
+ *       antes de consultarla.</li>
+ *   <li>{@code orden} es la posición del tipo en el orden global del catálogo (Libro,
+ *       Revista, Video).</li>
+ *   <li>{@code meta} trae el metadato ya formateado como en el inventario legado
+ *       ({@code ISBN=...}, {@code issue=...}, {@code duration=...}).</li>
+ * </ul>
+ */
+@Entity
+@Immutable
+@Subselect("""
+        select 'Libro' as tipo, 0 as orden, l.id as id, l.titulo as titulo, l.autorOEditor as autorOEditor,
+               'ISBN=' || ifnull(l.isbn, 'null') as meta, l.paginas as paginas, 0 as duracionMinutos
+        from Libro l
+        union all
+        select 'Revista', 1, r.id, r.titulo, r.autorOEditor,
+               'issue=' || r.numeroEdicion, 0, 0
+        from Revista r
+        union all
+        select 'Video', 2, v.id, v.titulo, v.autorOEditor,
+               'duration=' || v.duracionMinutos, 0, v.duracionMinutos
+        from Video v
+        """)
+@Synchronize({"Libro", "Revista", "Video"})
+@IdClass(MaterialCatalogo.Clave.class)
+public class MaterialCatalogo {
+
+    /** Tipo lógico del material ({@code Libro}, {@code Revista}, {@code Video}). */
+    @Id
+    private String tipo;
+
+    /** Identificador del material dentro de la tabla de su tipo. */
+    @Id
+    private Long id;
+
+    /** Posición del tipo en el orden global del catálogo. */
+    private int orden;
+
+    /** Título del material. */
+    private String titulo;
+
+    /** Autor o editor del material (puede ser {@code null}). */
+    private String autorOEditor;
+
+    /** Metadato breve ya formateado según el tipo. */
+    private String meta;
+
+    /** Páginas del libro; 0 para otros tipos. */
+    private int paginas;
+
+    /** Duración del video en minutos; 0 para otros tipos. */
+    private int duracionMinutos;
+
+    /** @return tipo lógico del material. */
+    public String obtenerTipo() { return tipo; }
+
+    /** @return identificador del material dentro de su tabla. */
+    public Long obtenerId() { return id; }
+
+    /** @return posición del tipo en el orden global. */
+    public int obtenerOrden() { return orden; }
+
+    /** @return título del material. */
+    public String obtenerTitulo() { return titulo; }
+
+    /** @return autor o editor, o {@code null} si no está registrado. */
+    public String obtenerAutorOEditor() { return autorOEditor; }
+
+    /** @return metadato formateado del material. */
+    public String obtenerMeta() { return meta; }
+
+    /** @return páginas (solo libros). */
+    public int obtenerPaginas() { return paginas; }
+
+    /** @return duración en minutos (solo videos). */
+    public int obtenerDuracionMinutos() { return duracionMinutos; }
+
+    /** Clave compuesta {@code (tipo, id)} de la vista. */
+    public static class Clave implements Serializable {
+        private String tipo;
+        private Long id;
+
+        public Clave() { }
+
+        public Clave(String tipo, Long id) {
+            this.tipo = tipo;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Clave c)) return false;
+            return Objects.equals(tipo, c.tipo) && Objects.equals(id, c.id);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(tipo, id); }
+    }
+}
@@ -1,5 +1,6 @@
 package cl.biblioteca.dominio;
 
+import cl.biblioteca.persistencia.IdSecuencial;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
@@ -16,10 +17,18 @@ import java.time.LocalDate;
  *
  * <h2>Persistencia</h2>
  * <ul>
- *   <li>La relación con {@link Socio} se mapea mediante {@code socio_id}.</li>
+ *   <li>La relación con {@link Socio} se mapea mediante {@code socio_id} y es <em>perezosa</em>:
+ *       cargar préstamos no carga sus socios. Las rutas que sí los necesitan (multas) los traen
+ *       en la misma consulta con {@code join fetch} o con el grafo {@link #GRAFO_CON_SOCIO}.</li>
  *   <li>Los nombres de columna se fijan explícitamente para alinear con scripts de carga
  *       (p. ej., {@code seed.sql}).</li>
  *   <li>Las fechas se modelan con {@link LocalDate} (sin componente de tiempo).</li>
+ *   <li>{@link #version} habilita el bloqueo optimista: devoluciones y renovaciones
+ *       concurrentes del mismo préstamo fallan con {@link OptimisticLockException} en lugar de
+ *       pisarse, sin bloqueos de tabla.</li>
+ *   <li>Índices: {@code (fechaDevolucion, fechaVencimiento, id)} para préstamos abiertos y
+ *       vencidos (paginación por clave) y rangos de devolución; {@code fechaVencimiento};
+ *       {@code socio_id}; {@code (tipoMaterial, idMaterial)}.</li>
  * </ul>
  *
  * <h2>Reglas e invariantes</h2>
@@ -31,15 +40,34 @@ import java.time.LocalDate;
  * </ul>
  */
 @Entity
+@NamedEntityGraph(name = Prestamo.GRAFO_CON_SOCIO, attributeNodes = @NamedAttributeNode("socio"))
+@Table(indexes = {
+        @Index(name = "idx_prestamo_devolucion", columnList = "fechaDevolucion, fechaVencimiento, id"),
+        @Index(name = "idx_prestamo_vencimiento", columnList = "fechaVencimiento"),
+        @Index(name = "idx_prestamo_socio", columnList = "socio_id"),
+        @Index(name = "idx_prestamo_material", columnList = "tipoMaterial, idMaterial")
+})
 public class Prestamo {
 
-    /** Identificador técnico autogenerado del préstamo. */
+    /** Grafo de entidad que carga el préstamo junto con su {@link Socio} en una consulta. */
+    public static final String GRAFO_CON_SOCIO = "Prestamo.conSocio";
+
+    /**
+     * Identificador técnico autogenerado del préstamo. Se asigna en memoria antes del
+     * {@code INSERT} ({@link IdSecuencial}), de modo que Hibernate puede agrupar inserciones en
+     * lotes JDBC, cosa que {@code IDENTITY} impide.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdSecuencial
     private Long id;
 
+    /** Versión de la fila para bloqueo optimista; la incrementa Hibernate en cada actualización. */
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     /** Socio que realiza el préstamo (FK: {@code socio_id}). */
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "socio_id")
     private Socio socio;
 
@@ -72,6 +100,9 @@ public class Prestamo {
     /** @return id autogenerado del préstamo, o {@code null} si no se ha persistido. */
     public Long obtenerId() { return id; }
 
+    /** @return versión actual de la fila (bloqueo optimista). */
+    public long obtenerVersion() { return version; }
+
     /** @return socio que efectuó el préstamo (no nulo). */
     public Socio obtenerSocio() { return socio; }
 
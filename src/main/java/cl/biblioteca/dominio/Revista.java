@@ -2,6 +2,8 @@ package cl.biblioteca.dominio;
 
 import cl.biblioteca.servicio.visitor.VisitanteMaterial;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entidad que representa una <strong>Revista</strong> en el catálogo de la biblioteca.
@@ -15,6 +17,8 @@ import jakarta.persistence.*;
  * <ul>
  *   <li>Anotada con {@link Entity} para su mapeo por JPA/Hibernate.</li>
  *   <li>Los campos heredados de {@code MaterialBiblioteca} se persisten en la misma tabla.</li>
+ *   <li>Se guarda en la caché de segundo nivel (región {@code revistas}, ver {@code cache.conf}):
+ *       buscarla de nuevo por id no consulta SQLite.</li>
  * </ul>
  *
  * <h2>Invariantes esperados</h2>
@@ -23,6 +27,8 @@ import jakarta.persistence.*;
  * </ul>
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "revistas")
 public class Revista extends MaterialBiblioteca {
 
     /** Número de edición o fascículo de la revista (por ejemplo, 182, 210, etc.). */
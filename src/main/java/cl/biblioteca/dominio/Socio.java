@@ -1,6 +1,8 @@
 package cl.biblioteca.dominio;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entidad que representa a un <strong>Socio</strong> de la biblioteca.
@@ -14,6 +16,8 @@ import jakarta.persistence.*;
  *   <li>Anotada con {@link Entity} para su mapeo por JPA/Hibernate.</li>
  *   <li>El identificador {@link #id} se genera con estrategia {@link GenerationType#IDENTITY}.</li>
  *   <li>El campo {@link #nombre} es obligatorio a nivel de base de datos.</li>
+ *   <li>Se guarda en la caché de segundo nivel (región {@code socios}, ver {@code cache.conf}):
+ *       buscarlo de nuevo por id no consulta SQLite.</li>
  * </ul>
  *
  * <h2>Invariantes esperados</h2>
@@ -23,6 +27,8 @@ import jakarta.persistence.*;
  * </ul>
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "socios")
 public class Socio {
 
     /** Identificador técnico autogenerado del socio. */
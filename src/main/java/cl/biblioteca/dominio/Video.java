@@ -2,6 +2,8 @@ package cl.biblioteca.dominio;
 
 import cl.biblioteca.servicio.visitor.VisitanteMaterial;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Entidad que representa un material audiovisual de tipo <strong>Video</strong>
@@ -16,6 +18,8 @@ import jakarta.persistence.*;
  * <ul>
  *   <li>Anotada con {@link Entity} para que JPA/Hibernate la mapee a una tabla.</li>
  *   <li>Los campos heredados de {@code MaterialBiblioteca} se persisten en la misma tabla.</li>
+ *   <li>Se guarda en la caché de segundo nivel (región {@code videos}, ver {@code cache.conf}):
+ *       buscarlo de nuevo por id no consulta SQLite.</li>
  * </ul>
  *
  * <h2>Invariantes esperados</h2>
@@ -25,6 +29,8 @@ import jakarta.persistence.*;
  * </ul>
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "videos")
 public class Video extends MaterialBiblioteca {
 
     /** Duración total del video en minutos (valor no negativo). */
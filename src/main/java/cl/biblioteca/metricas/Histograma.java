@@ -0,0 +1,118 @@
+package cl.biblioteca.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias concurrente y sin bloqueos, con cubetas <em>log-lineales</em> al
+ * estilo HDR.
+ *
+ * <p>
+ * Cada potencia de dos se divide en {@value #SUBCUBETAS} cubetas de igual ancho, por lo que el
+ * error relativo de un percentil es a lo sumo 1/{@value #SUBCUBETAS} (6,25 %) en todo el rango
+ * (de 1 ns a ~4,9 h; los valores mayores se acumulan en la última cubeta). Registrar un valor
+ * es calcular un índice con operaciones de bits e incrementar un contador atómico: no toma
+ * bloqueos ni reserva memoria.
+ * </p>
+ *
+ * <p>Las lecturas ({@link #percentil(double)}, {@link #contarHasta(long)}) recorren las
+ * cubetas sin detener a los escritores; bajo escritura concurrente son aproximadas.</p>
+ */
+public final class Histograma {
+
+    /** Bits de la subdivisión de cada potencia de dos. */
+    private static final int BITS_SUB = 4;
+
+    /** Cubetas por potencia de dos. */
+    public static final int SUBCUBETAS = 1 << BITS_SUB;
+
+    /** Exponente máximo representado (2^44 ns ≈ 4,9 h). */
+    private static final int EXPONENTE_MAXIMO = 43;
+
+    private static final int CUBETAS = (EXPONENTE_MAXIMO - BITS_SUB + 2) * SUBCUBETAS;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final AtomicLong cantidad = new AtomicLong();
+    private final AtomicLong suma = new AtomicLong();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra una observación.
+     *
+     * @param nanos duración en nanosegundos; los negativos cuentan como 0.
+     */
+    public void registrar(long nanos) {
+        long v = Math.max(0, nanos);
+        cubetas.incrementAndGet(indice(v));
+        cantidad.incrementAndGet();
+        suma.addAndGet(v);
+        long m;
+        while (v > (m = maximo.get()) && !maximo.compareAndSet(m, v)) { }
+    }
+
+    /** @return cantidad de observaciones. */
+    public long cantidad() { return cantidad.get(); }
+
+    /** @return suma de las observaciones, en nanosegundos. */
+    public long suma() { return suma.get(); }
+
+    /** @return mayor observación, en nanosegundos (exacta). */
+    public long maximo() { return maximo.get(); }
+
+    /**
+     * Percentil aproximado.
+     *
+     * @param q fracción en {@code [0, 1]} (p. ej., {@code 0.99}).
+     * @return límite superior de la cubeta que contiene el percentil (acotado por
+     *         {@link #maximo()}), en nanosegundos; 0 si no hay observaciones.
+     */
+    public long percentil(double q) {
+        long total = 0;
+        long[] copia = new long[CUBETAS];
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        if (total == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(q * total));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) return Math.min(limiteSuperior(i), maximo());
+        }
+        return maximo();
+    }
+
+    /**
+     * Cantidad de observaciones menores o iguales a {@code limiteNanos}, para exportar cubetas
+     * acumuladas con límites fijos (Prometheus). Una cubeta cuenta si su límite superior no
+     * supera {@code limiteNanos}.
+     *
+     * @param limiteNanos límite en nanosegundos.
+     * @return observaciones acumuladas hasta el límite.
+     */
+    public long contarHasta(long limiteNanos) {
+        long n = 0;
+        for (int i = 0; i < CUBETAS && limiteSuperior(i) <= limiteNanos; i++) {
+            n += cubetas.get(i);
+        }
+        return n;
+    }
+
+    /** Índice de la cubeta de {@code v}: lineal bajo {@link #SUBCUBETAS}, log-lineal después. */
+    static int indice(long v) {
+        if (v < SUBCUBETAS) return (int) v;
+        int exponente = 63 - Long.numberOfLeadingZeros(v);
+        if (exponente > EXPONENTE_MAXIMO) return CUBETAS - 1;
+        int sub = (int) (v >>> (exponente - BITS_SUB)) & (SUBCUBETAS - 1);
+        return (exponente - BITS_SUB + 1) * SUBCUBETAS + sub;
+    }
+
+    /** Mayor valor que cae en la cubeta {@code i}. */
+    static long limiteSuperior(int i) {
+        if (i < SUBCUBETAS) return i;
+        int exponente = i / SUBCUBETAS + BITS_SUB - 1;
+        long ancho = 1L << (exponente - BITS_SUB);
+        return ((long) (SUBCUBETAS + i % SUBCUBETAS) << (exponente - BITS_SUB)) + ancho - 1;
+    }
+}
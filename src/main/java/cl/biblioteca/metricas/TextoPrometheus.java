@@ -0,0 +1,112 @@
+package cl.biblioteca.metricas;
+
+/**
+ * Escritor del formato de texto de Prometheus (versión 0.0.4) sobre un {@link StringBuilder}.
+ *
+ * <p>Cada métrica se declara una vez con {@link #familia(String, String, String)} y luego se
+ * agregan sus muestras. Las etiquetas se pasan como pares {@code nombre, valor}; los valores
+ * se escapan según el formato.</p>
+ */
+public final class TextoPrometheus {
+
+    /** Tipo de contenido de la respuesta. */
+    public static final String TIPO_CONTENIDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Límites (en segundos) de las cubetas exportadas para los histogramas de latencia. */
+    private static final double[] LIMITES_SEGUNDOS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final StringBuilder sb = new StringBuilder(16 * 1024);
+
+    /**
+     * Declara una familia de métricas.
+     *
+     * @param nombre nombre de la métrica.
+     * @param tipo   {@code counter}, {@code gauge} o {@code histogram}.
+     * @param ayuda  descripción breve.
+     * @return este escritor.
+     */
+    public TextoPrometheus familia(String nombre, String tipo, String ayuda) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+        return this;
+    }
+
+    /**
+     * Agrega una muestra.
+     *
+     * @param nombre    nombre de la métrica (o de la serie, p. ej. {@code _count}).
+     * @param valor     valor de la muestra.
+     * @param etiquetas pares {@code nombre, valor}.
+     * @return este escritor.
+     */
+    public TextoPrometheus muestra(String nombre, double valor, String... etiquetas) {
+        sb.append(nombre);
+        etiquetas(etiquetas, null, null);
+        sb.append(' ').append(formato(valor)).append('\n');
+        return this;
+    }
+
+    /**
+     * Agrega las series de un histograma de latencias: cubetas acumuladas {@code _bucket}
+     * (incluida {@code +Inf}), {@code _sum} en segundos y {@code _count}.
+     *
+     * @param nombre    nombre de la familia (declarada como {@code histogram}).
+     * @param h         histograma en nanosegundos.
+     * @param etiquetas pares {@code nombre, valor}.
+     * @return este escritor.
+     */
+    public TextoPrometheus histograma(String nombre, Histograma h, String... etiquetas) {
+        long cantidad = h.cantidad();
+        for (double limite : LIMITES_SEGUNDOS) {
+            sb.append(nombre).append("_bucket");
+            etiquetas(etiquetas, "le", formato(limite));
+            sb.append(' ').append(h.contarHasta((long) (limite * 1e9))).append('\n');
+        }
+        sb.append(nombre).append("_bucket");
+        etiquetas(etiquetas, "le", "+Inf");
+        sb.append(' ').append(cantidad).append('\n');
+        muestra(nombre + "_sum", h.suma() / 1e9, etiquetas);
+        muestra(nombre + "_count", cantidad, etiquetas);
+        return this;
+    }
+
+    private void etiquetas(String[] pares, String extraNombre, String extraValor) {
+        if (pares.length == 0 && extraNombre == null) return;
+        sb.append('{');
+        for (int i = 0; i + 1 < pares.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(pares[i]).append("=\"");
+            escapar(pares[i + 1]);
+            sb.append('"');
+        }
+        if (extraNombre != null) {
+            if (pares.length > 0) sb.append(',');
+            sb.append(extraNombre).append("=\"").append(extraValor).append('"');
+        }
+        sb.append('}');
+    }
+
+    private void escapar(String valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '"'  -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                default   -> sb.append(c);
+            }
+        }
+    }
+
+    private static String formato(double v) {
+        if (Double.isNaN(v)) return "NaN";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
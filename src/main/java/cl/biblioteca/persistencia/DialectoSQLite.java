@@ -0,0 +1,49 @@
+package cl.biblioteca.persistencia;
+
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.community.dialect.identity.SQLiteIdentityColumnSupport;
+import org.hibernate.dialect.identity.IdentityColumnSupport;
+
+import java.sql.Types;
+
+/**
+ * Dialecto SQLite de la aplicación: corrige la DDL de columnas {@code IDENTITY} y la
+ * validación de tipos enteros.
+ *
+ * <p>
+ * Al generar la columna identidad, Hibernate omite el tipo {@code integer} si la sentencia
+ * {@code create table} ya contiene esa palabra (por ejemplo, por {@code paginas integer} en
+ * {@code Libro}). La columna queda sin tipo, no es alias del {@code rowid} y las filas
+ * insertadas sin id explícito quedan con {@code id = NULL}. Declarar el tipo en mayúsculas
+ * evita esa comparación y SQLite lo interpreta igual ({@code INTEGER PRIMARY KEY}).
+ * </p>
+ *
+ * <p>
+ * En SQLite todos los enteros se almacenan igual (hasta 64 bits) y el driver informa
+ * {@code INTEGER} para las claves {@code INTEGER PRIMARY KEY}; al validar el esquema
+ * ({@code hbm2ddl.auto=validate}) los tipos enteros se consideran equivalentes.
+ * </p>
+ */
+public class DialectoSQLite extends SQLiteDialect {
+
+    private static final IdentityColumnSupport IDENTIDAD = new SQLiteIdentityColumnSupport() {
+        @Override
+        public String getIdentityColumnString(int type) {
+            return "INTEGER";
+        }
+    };
+
+    @Override
+    public IdentityColumnSupport getIdentityColumnSupport() {
+        return IDENTIDAD;
+    }
+
+    @Override
+    public boolean equivalentTypes(int tipo1, int tipo2) {
+        return super.equivalentTypes(tipo1, tipo2) || esEntero(tipo1) && esEntero(tipo2);
+    }
+
+    private static boolean esEntero(int tipo) {
+        return tipo == Types.TINYINT || tipo == Types.SMALLINT || tipo == Types.INTEGER || tipo == Types.BIGINT;
+    }
+}
@@ -0,0 +1,39 @@
+package cl.biblioteca.persistencia;
+
+import org.hibernate.cache.internal.DefaultCacheKeysFactory;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Caché de segundo nivel JCache (Caffeine) cuyas claves no incluyen el pool de la sesión.
+ *
+ * <p>
+ * {@link ProveedorConexionesSQLite} elige el pool con el identificador <em>multi-tenant</em> de
+ * cada sesión ({@code escritura} o {@code lectura}), y Hibernate agrega ese identificador a
+ * las claves de entidades y colecciones. Ambos pools leen la misma base, así que las
+ * entradas deben ser comunes: una actualización hecha por el escritor tiene que reemplazar lo
+ * que verán los lectores. Esta fábrica genera las mismas claves que Hibernate sin
+ * multi-tenant. Hibernate 7 no aplica {@code hibernate.cache.keys_factory}, por eso se fija
+ * aquí.
+ * </p>
+ */
+public class FabricaRegionesCache extends JCacheRegionFactory {
+
+    public FabricaRegionesCache() {
+        super(new DefaultCacheKeysFactory() {
+            @Override
+            public Object createEntityKey(Object id, EntityPersister persister,
+                                          SessionFactoryImplementor factory, String pool) {
+                return staticCreateEntityKey(id, persister, factory, null);
+            }
+
+            @Override
+            public Object createCollectionKey(Object id, CollectionPersister persister,
+                                              SessionFactoryImplementor factory, String pool) {
+                return staticCreateCollectionKey(id, persister, factory, null);
+            }
+        });
+    }
+}
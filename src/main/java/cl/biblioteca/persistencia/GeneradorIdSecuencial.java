@@ -0,0 +1,71 @@
+package cl.biblioteca.persistencia;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.GeneratorCreationContext;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.lang.reflect.Member;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de ids para SQLite que entrega el id <strong>antes</strong> del {@code INSERT}.
+ *
+ * <p>
+ * Con {@code IDENTITY} Hibernate debe ejecutar cada {@code INSERT} de inmediato para conocer el
+ * id, y no puede agruparlos en lotes JDBC. Los generadores de tabla o secuencia de Hibernate
+ * tampoco sirven en SQLite: reservan cada bloque en una conexión aparte, que queda bloqueada
+ * ({@code SQLITE_BUSY}) en cuanto la transacción en curso ya escribió, porque SQLite admite un
+ * solo escritor.
+ * </p>
+ *
+ * <h2>Funcionamiento</h2>
+ * <ul>
+ *   <li>En el primer uso lee {@code max(id)} de la tabla, con la conexión de la propia sesión.</li>
+ *   <li>Desde ahí asigna ids con un contador atómico en memoria: equivale a un generador
+ *       <em>pooled</em> con un bloque ilimitado, sin acceso a la base de datos por id.</li>
+ *   <li>Supone que esta aplicación es el único proceso que inserta en la tabla (el caso de una
+ *       base SQLite embebida). Los ids de una transacción revertida no se reutilizan.</li>
+ * </ul>
+ */
+public class GeneradorIdSecuencial implements IdentifierGenerator {
+
+    private final String tabla;
+    private final String columna;
+    private volatile AtomicLong ultimo;
+
+    public GeneradorIdSecuencial(IdSecuencial anotacion, Member miembro, GeneratorCreationContext ctx) {
+        this.tabla = ctx.getPersistentClass().getTable().getName();
+        this.columna = ctx.getProperty().getColumns().get(0).getName();
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object entidad) {
+        AtomicLong contador = ultimo;
+        if (contador == null) {
+            synchronized (this) {
+                contador = ultimo;
+                if (contador == null) {
+                    contador = new AtomicLong(maximo(session));
+                    ultimo = contador;
+                }
+            }
+        }
+        return contador.incrementAndGet();
+    }
+
+    /** Lee el mayor id existente en la transacción de {@code session}. */
+    private long maximo(SharedSessionContractImplementor session) {
+        String sql = "select coalesce(max(" + columna + "), 0) from " + tabla;
+        try (Statement st = session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection().createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new HibernateException("No se pudo leer el último id de " + tabla, e);
+        }
+    }
+}
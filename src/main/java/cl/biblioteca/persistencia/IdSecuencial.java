@@ -0,0 +1,20 @@
+package cl.biblioteca.persistencia;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marca un identificador generado por {@link GeneradorIdSecuencial}: asignado en memoria antes
+ * del {@code INSERT}, lo que permite agrupar inserciones en lotes JDBC.
+ */
+@IdGeneratorType(GeneradorIdSecuencial.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface IdSecuencial {
+}
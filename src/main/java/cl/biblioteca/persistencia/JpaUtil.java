@@ -1,8 +1,21 @@
 package cl.biblioteca.persistencia;
 
+import cl.biblioteca.metricas.TextoPrometheus;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
 
 /**
  * Utilidad para gestionar el ciclo de vida de JPA en la aplicación.
@@ -29,6 +42,11 @@ import jakarta.persistence.Persistence;
  *       crearse una sola vez por aplicación.</li>
  *   <li>Cada {@link EntityManager} es <strong>no</strong> thread-safe y debe cerrarse
  *       siempre tras su uso.</li>
+ *   <li>Las conexiones vienen de {@link ProveedorConexionesSQLite}: {@link #em()} y
+ *       {@link #sesionSinEstadoEscritura()} usan la conexión de escritura; {@link #emLectura()}
+ *       y {@link #sesionSinEstado()}, el pool de lectura.</li>
+ *   <li>El perfil {@code produccion} ({@code perfil-produccion.properties}) valida el esquema en
+ *       lugar de recrearlo y no registra sentencias SQL.</li>
  *   <li>Si usas <code>hibernate.hbm2ddl.auto=create-drop</code>, recuerda invocar
  *       {@link #close()} al apagar la app para que Hibernate ejecute el <em>drop</em>
  *       del esquema.</li>
@@ -38,18 +56,165 @@ import jakarta.persistence.Persistence;
  */
 public class JpaUtil {
 
-    /** Fábrica única asociada a la unidad de persistencia "libraryPU". */
-    private static final EntityManagerFactory emf =
-            Persistence.createEntityManagerFactory("libraryPU");
+    /** Perfil de arranque: propiedad de sistema {@code biblioteca.perfil} o {@code BIBLIOTECA_PERFIL}. */
+    public static final String PERFIL = System.getProperty("biblioteca.perfil",
+            System.getenv().getOrDefault("BIBLIOTECA_PERFIL", "desarrollo"));
+
+    /** Fábrica única asociada a la unidad de persistencia "libraryPU"; {@code null} hasta {@link #iniciar()}. */
+    private static volatile EntityManagerFactory emf;
 
     /**
-     * Abre un nuevo {@link EntityManager}.
+     * Crea el {@link EntityManagerFactory} si aún no existe o si se cerró con {@link #close()}.
+     * Puede invocarse desde un hilo de fondo al arrancar; cualquier otro acceso a JPA espera a
+     * que termine.
+     *
+     * <p>Si existe {@code perfil-<PERFIL>.properties} en el classpath, sus claves reemplazan
+     * las de {@code persistence.xml}; cada una puede a su vez sobrescribirse con una propiedad
+     * de sistema del mismo nombre ({@code -Dhibernate.hbm2ddl.auto=update}).</p>
+     *
+     * @return la fábrica ya creada.
+     */
+    public static synchronized EntityManagerFactory iniciar() {
+        if (emf == null || !emf.isOpen()) {
+            emf = Persistence.createEntityManagerFactory("libraryPU", propiedadesPerfil());
+        }
+        return emf;
+    }
+
+    private static EntityManagerFactory emf() {
+        EntityManagerFactory f = emf;
+        return f != null ? f : iniciar();
+    }
+
+    private static SessionFactory sesiones() {
+        return emf().unwrap(SessionFactory.class);
+    }
+
+    private static Map<String, Object> propiedadesPerfil() {
+        Properties p = new Properties();
+        try (InputStream in = JpaUtil.class.getResourceAsStream("/perfil-" + PERFIL + ".properties")) {
+            if (in != null) p.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el perfil " + PERFIL, e);
+        }
+        Map<String, Object> m = new HashMap<>();
+        for (String clave : p.stringPropertyNames()) {
+            m.put(clave, System.getProperty(clave, p.getProperty(clave)));
+        }
+        return m;
+    }
+
+    /**
+     * Abre un nuevo {@link EntityManager} que escribe por la conexión de escritura. La toma al
+     * iniciar una transacción (o al primer acceso) y la devuelve al terminarla.
      * El llamador es responsable de cerrarlo con {@link EntityManager#close()}.
      *
      * @return un {@code EntityManager} listo para usar.
      */
     public static EntityManager em() {
-        return emf.createEntityManager();
+        return sesiones().withOptions().tenantIdentifier(ProveedorConexionesSQLite.ESCRITURA).openSession();
+    }
+
+    /**
+     * Abre un {@link EntityManager} sobre el pool de lectura. Cualquier escritura falla
+     * ({@code PRAGMA query_only}). El llamador es responsable de cerrarlo.
+     *
+     * @return un {@code EntityManager} de solo lectura.
+     */
+    public static EntityManager emLectura() {
+        return sesiones().withOptions().tenantIdentifier(ProveedorConexionesSQLite.LECTURA).openSession();
+    }
+
+    /**
+     * Abre una {@link StatelessSession} de Hibernate para lecturas masivas de solo lectura,
+     * sobre el pool de lectura.
+     * <p>No mantiene contexto de persistencia (sin caché de primer nivel ni instantáneas para
+     * <em>dirty checking</em>), por lo que es adecuada para reportes y proyecciones.
+     * El llamador es responsable de cerrarla.</p>
+     *
+     * @return una sesión sin estado lista para usar.
+     */
+    public static StatelessSession sesionSinEstado() {
+        return sesiones().withStatelessOptions().tenantIdentifier(ProveedorConexionesSQLite.LECTURA).openStatelessSession();
+    }
+
+    /**
+     * Abre una {@link StatelessSession} sobre la conexión de escritura, para escrituras masivas
+     * (p. ej., JDBC en lote vía {@code doWork}). El llamador es responsable de cerrarla.
+     *
+     * @return una sesión sin estado que admite escrituras.
+     */
+    public static StatelessSession sesionSinEstadoEscritura() {
+        return sesiones().withStatelessOptions().tenantIdentifier(ProveedorConexionesSQLite.ESCRITURA).openStatelessSession();
+    }
+
+    /**
+     * Aciertos y fallos de la caché de segundo nivel y de la caché de consultas.
+     *
+     * @return por región (entidades y consultas): {@code aciertos}, {@code fallos} y
+     *         {@code escrituras}; en {@code consultas}, los totales de la caché de consultas.
+     */
+    public static Map<String, Map<String, Long>> estadisticasCache() {
+        Statistics st = emf().unwrap(SessionFactory.class).getStatistics();
+        Map<String, Map<String, Long>> out = new LinkedHashMap<>();
+        for (String region : st.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics r = st.getCacheRegionStatistics(region);
+            if (r == null) continue;
+            Map<String, Long> m = new LinkedHashMap<>();
+            m.put("aciertos", r.getHitCount());
+            m.put("fallos", r.getMissCount());
+            m.put("escrituras", r.getPutCount());
+            out.put(region, m);
+        }
+        Map<String, Long> consultas = new LinkedHashMap<>();
+        consultas.put("aciertos", st.getQueryCacheHitCount());
+        consultas.put("fallos", st.getQueryCacheMissCount());
+        consultas.put("escrituras", st.getQueryCachePutCount());
+        out.put("consultas", consultas);
+        return out;
+    }
+
+    /**
+     * Escribe en formato Prometheus las métricas de persistencia: sesiones, conexiones,
+     * sentencias y transacciones de Hibernate; estado de los pools; aciertos y fallos de la
+     * caché de segundo nivel por región; y las métricas por sentencia de {@link MetricasSql}.
+     *
+     * @param t escritor de destino.
+     */
+    public static void exportarMetricas(TextoPrometheus t) {
+        Statistics st = emf().unwrap(SessionFactory.class).getStatistics();
+        t.familia("biblioteca_hibernate_sesiones_total", "counter", "Sesiones abiertas y cerradas.");
+        t.muestra("biblioteca_hibernate_sesiones_total", st.getSessionOpenCount(), "evento", "abiertas");
+        t.muestra("biblioteca_hibernate_sesiones_total", st.getSessionCloseCount(), "evento", "cerradas");
+        t.familia("biblioteca_hibernate_conexiones_total", "counter", "Conexiones JDBC obtenidas por Hibernate.");
+        t.muestra("biblioteca_hibernate_conexiones_total", st.getConnectCount());
+        t.familia("biblioteca_hibernate_sentencias_total", "counter", "Sentencias JDBC preparadas y cerradas.");
+        t.muestra("biblioteca_hibernate_sentencias_total", st.getPrepareStatementCount(), "evento", "preparadas");
+        t.muestra("biblioteca_hibernate_sentencias_total", st.getCloseStatementCount(), "evento", "cerradas");
+        t.familia("biblioteca_hibernate_transacciones_total", "counter", "Transacciones terminadas.");
+        t.muestra("biblioteca_hibernate_transacciones_total", st.getSuccessfulTransactionCount(), "resultado", "exito");
+        t.muestra("biblioteca_hibernate_transacciones_total",
+                st.getTransactionCount() - st.getSuccessfulTransactionCount(), "resultado", "fallo");
+
+        t.familia("biblioteca_pool_conexiones", "gauge", "Conexiones por pool y estado.");
+        ProveedorConexionesSQLite.estadisticas().forEach((pool, m) -> m.forEach((estado, n) ->
+                t.muestra("biblioteca_pool_conexiones", n, "pool", pool, "estado", estado)));
+
+        Map<String, Map<String, Long>> cache = estadisticasCache();
+        cache.remove("consultas"); // ya presente como región default-query-results-region
+        t.familia("biblioteca_cache_aciertos_total", "counter", "Aciertos de la cache de segundo nivel por region.");
+        cache.forEach((region, m) -> t.muestra("biblioteca_cache_aciertos_total", m.get("aciertos"), "region", region));
+        t.familia("biblioteca_cache_fallos_total", "counter", "Fallos de la cache de segundo nivel por region.");
+        cache.forEach((region, m) -> t.muestra("biblioteca_cache_fallos_total", m.get("fallos"), "region", region));
+        t.familia("biblioteca_cache_tasa_aciertos", "gauge", "Aciertos / (aciertos + fallos) por region.");
+        cache.forEach((region, m) -> {
+            long consultas = m.get("aciertos") + m.get("fallos");
+            if (consultas > 0) {
+                t.muestra("biblioteca_cache_tasa_aciertos", (double) m.get("aciertos") / consultas, "region", region);
+            }
+        });
+
+        MetricasSql.exportar(t);
     }
 
     /**
@@ -59,8 +224,9 @@ public class JpaUtil {
      * y, en su caso, que se ejecute el <em>drop</em> de esquema.</p>
      */
     public static void close() {
-        if (emf.isOpen()) {
-            emf.close();
+        EntityManagerFactory f = emf;
+        if (f != null && f.isOpen()) {
+            f.close();
         }
     }
 }
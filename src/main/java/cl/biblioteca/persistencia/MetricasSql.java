@@ -0,0 +1,262 @@
+package cl.biblioteca.persistencia;
+
+import cl.biblioteca.metricas.Histograma;
+import cl.biblioteca.metricas.TextoPrometheus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Métricas por sentencia SQL, medidas en la capa JDBC: ejecuciones, filas, errores y un
+ * {@link Histograma} de latencias.
+ *
+ * <p>
+ * {@link ProveedorConexionesSQLite} envuelve cada conexión con {@link #instrumentar(Connection)},
+ * de modo que se mide <em>toda</em> sentencia: las generadas desde HQL, las nativas, las de
+ * {@code doWork} y las de lotes JDBC. La clave es el SQL con espacios normalizados y cada lista
+ * de parámetros ({@code in (?, ?, ?)}) reducida a {@code ?, ...}, de modo que una consulta con
+ * {@code IN} ocupa una sola entrada sin importar cuántos ids reciba.
+ * </p>
+ *
+ * <h2>Qué se mide</h2>
+ * <ul>
+ *   <li>Consultas: desde {@code executeQuery} hasta cerrar el {@link ResultSet} (incluye leer
+ *       las filas); filas = llamadas a {@code next()} que devolvieron {@code true}.</li>
+ *   <li>Actualizaciones y lotes: la duración de {@code executeUpdate}/{@code executeBatch};
+ *       filas = filas afectadas.</li>
+ *   <li>Se guardan hasta {@value #MAXIMO_SENTENCIAS} sentencias distintas; las demás se
+ *       acumulan bajo {@value #OTRAS}.</li>
+ * </ul>
+ */
+public final class MetricasSql {
+
+    /** Máximo de sentencias distintas con métricas propias. */
+    public static final int MAXIMO_SENTENCIAS = 500;
+
+    /** Clave que agrupa las sentencias que exceden {@link #MAXIMO_SENTENCIAS}. */
+    public static final String OTRAS = "(otras)";
+
+    /** Métricas por SQL normalizado. */
+    private static final ConcurrentHashMap<String, Sentencia> SENTENCIAS = new ConcurrentHashMap<>();
+
+    /** Atajo por texto SQL tal como llega (evita normalizar en cada ejecución). */
+    private static final ConcurrentHashMap<String, Sentencia> POR_TEXTO = new ConcurrentHashMap<>();
+
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+    /** Dos o más parámetros seguidos, como los de un {@code IN (?, ?, ?)}. */
+    private static final Pattern LISTA_PARAMETROS = Pattern.compile("\\?(?: ?, ?\\?)+");
+
+    private MetricasSql() { }
+
+    /** Métricas acumuladas de una sentencia. */
+    static final class Sentencia {
+        final String sql;
+        final Histograma latencia = new Histograma();
+        final AtomicLong filas = new AtomicLong();
+        final AtomicLong errores = new AtomicLong();
+
+        Sentencia(String sql) { this.sql = sql; }
+
+        void registrar(long inicio, long filasLeidas) {
+            latencia.registrar(System.nanoTime() - inicio);
+            if (filasLeidas > 0) filas.addAndGet(filasLeidas);
+        }
+    }
+
+    /**
+     * Envuelve una conexión para medir las sentencias que se preparen o ejecuten con ella.
+     *
+     * @param conexion conexión del pool.
+     * @return conexión instrumentada; cerrarla cierra (devuelve al pool) la original.
+     */
+    static Connection instrumentar(Connection conexion) {
+        return (Connection) Proxy.newProxyInstance(MetricasSql.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConexionInstrumentada(conexion));
+    }
+
+    /**
+     * Escribe las métricas en formato Prometheus: {@code biblioteca_sql_duracion_segundos}
+     * (histograma), {@code biblioteca_sql_filas_total} y {@code biblioteca_sql_errores_total},
+     * con la etiqueta {@code sentencia}.
+     *
+     * @param t escritor de destino.
+     */
+    public static void exportar(TextoPrometheus t) {
+        List<Sentencia> lista = new ArrayList<>(SENTENCIAS.values());
+        lista.sort(Comparator.comparing(s -> s.sql));
+
+        t.familia("biblioteca_sql_duracion_segundos", "histogram",
+                "Latencia por sentencia SQL (de la ejecucion al cierre del ResultSet).");
+        for (Sentencia s : lista) t.histograma("biblioteca_sql_duracion_segundos", s.latencia, "sentencia", s.sql);
+
+        t.familia("biblioteca_sql_filas_total", "counter", "Filas leidas o afectadas por sentencia SQL.");
+        for (Sentencia s : lista) t.muestra("biblioteca_sql_filas_total", s.filas.get(), "sentencia", s.sql);
+
+        t.familia("biblioteca_sql_errores_total", "counter", "Ejecuciones que terminaron en SQLException.");
+        for (Sentencia s : lista) t.muestra("biblioteca_sql_errores_total", s.errores.get(), "sentencia", s.sql);
+    }
+
+    /** Métricas de {@code sql}, creándolas si es la primera vez que se ve. */
+    static Sentencia sentencia(String sql) {
+        Sentencia s = POR_TEXTO.get(sql);
+        if (s != null) return s;
+
+        String clave = LISTA_PARAMETROS.matcher(ESPACIOS.matcher(sql.strip()).replaceAll(" ")).replaceAll("?, ...");
+        s = SENTENCIAS.get(clave);
+        if (s == null) {
+            s = SENTENCIAS.size() < MAXIMO_SENTENCIAS
+                    ? SENTENCIAS.computeIfAbsent(clave, Sentencia::new)
+                    : SENTENCIAS.computeIfAbsent(OTRAS, Sentencia::new);
+        }
+        if (POR_TEXTO.size() < 4 * MAXIMO_SENTENCIAS) POR_TEXTO.putIfAbsent(sql, s);
+        return s;
+    }
+
+    /** Invoca {@code m} sobre {@code destino} propagando la excepción original. */
+    private static Object delegar(Object destino, Method m, Object[] args) throws Throwable {
+        try {
+            return m.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Igualdad e {@code hashCode} por identidad del proxy (claves en registros de Hibernate). */
+    private static Object identidad(Object proxy, Method m, Object[] args) {
+        return switch (m.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> null;
+        };
+    }
+
+    private record ConexionInstrumentada(Connection destino) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            Object id = identidad(proxy, m, args);
+            if (id != null) return id;
+
+            Object r = delegar(destino, m, args);
+            return switch (m.getName()) {
+                case "prepareStatement", "prepareCall" -> Proxy.newProxyInstance(MetricasSql.class.getClassLoader(),
+                        new Class<?>[]{m.getReturnType()}, new SentenciaInstrumentada((Statement) r, sentencia((String) args[0])));
+                case "createStatement" -> Proxy.newProxyInstance(MetricasSql.class.getClassLoader(),
+                        new Class<?>[]{Statement.class}, new SentenciaInstrumentada((Statement) r, null));
+                default -> r;
+            };
+        }
+    }
+
+    private static final class SentenciaInstrumentada implements InvocationHandler {
+        private final Statement destino;
+        /** Sentencia preparada; {@code null} para {@link Statement} (el SQL llega en cada llamada). */
+        private final Sentencia preparada;
+        private Sentencia lote;
+        private ResultadoInstrumentado abierto;
+
+        SentenciaInstrumentada(Statement destino, Sentencia preparada) {
+            this.destino = destino;
+            this.preparada = preparada;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            Object id = identidad(proxy, m, args);
+            if (id != null) return id;
+
+            String nombre = m.getName();
+            switch (nombre) {
+                case "executeQuery", "executeUpdate", "executeLargeUpdate", "execute",
+                     "executeBatch", "executeLargeBatch" -> { }
+                case "addBatch" -> {
+                    if (args != null && args.length == 1) lote = sentencia((String) args[0]);
+                    return delegar(destino, m, args);
+                }
+                case "close" -> {
+                    if (abierto != null) abierto.terminar();
+                    return delegar(destino, m, args);
+                }
+                default -> {
+                    return delegar(destino, m, args);
+                }
+            }
+
+            Sentencia s = args != null && args.length > 0 && args[0] instanceof String sql ? sentencia(sql)
+                    : nombre.startsWith("executeBatch") || nombre.startsWith("executeLargeBatch")
+                        ? (preparada != null ? preparada : lote) : preparada;
+            if (s == null) return delegar(destino, m, args);
+
+            long inicio = System.nanoTime();
+            Object r;
+            try {
+                r = delegar(destino, m, args);
+            } catch (Throwable e) {
+                s.errores.incrementAndGet();
+                s.registrar(inicio, 0);
+                throw e;
+            }
+            if (r instanceof ResultSet rs) {
+                abierto = new ResultadoInstrumentado(rs, s, inicio);
+                return Proxy.newProxyInstance(MetricasSql.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, abierto);
+            }
+            s.registrar(inicio, filasAfectadas(r));
+            return r;
+        }
+    }
+
+    /** Filas afectadas según el resultado de {@code executeUpdate}/{@code executeBatch}. */
+    private static long filasAfectadas(Object r) {
+        if (r instanceof Number n) return n.longValue();
+        long total = 0;
+        if (r instanceof int[] ns) for (int n : ns) total += Math.max(0, n);
+        if (r instanceof long[] ns) for (long n : ns) total += Math.max(0, n);
+        return total;
+    }
+
+    private static final class ResultadoInstrumentado implements InvocationHandler {
+        private final ResultSet destino;
+        private final Sentencia sentencia;
+        private final long inicio;
+        private long filas;
+        private boolean terminado;
+
+        ResultadoInstrumentado(ResultSet destino, Sentencia sentencia, long inicio) {
+            this.destino = destino;
+            this.sentencia = sentencia;
+            this.inicio = inicio;
+        }
+
+        void terminar() {
+            if (terminado) return;
+            terminado = true;
+            sentencia.registrar(inicio, filas);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            Object id = identidad(proxy, m, args);
+            if (id != null) return id;
+
+            Object r = delegar(destino, m, args);
+            switch (m.getName()) {
+                case "next" -> { if ((Boolean) r) filas++; }
+                case "close" -> terminar();
+                default -> { }
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package cl.biblioteca.persistencia;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Proveedor de conexiones JDBC para SQLite con <strong>dos pools</strong> (HikariCP): un único
+ * escritor y varios lectores.
+ *
+ * <p>
+ * SQLite admite un solo escritor; en modo <em>WAL</em>, en cambio, los lectores no bloquean al
+ * escritor ni éste a ellos. Por eso las escrituras comparten una sola conexión (se encolan en
+ * el pool en lugar de chocar con {@code SQLITE_BUSY}) y las lecturas usan un pool aparte, de
+ * modo que los reportes no compiten con los préstamos. Las conexiones se reutilizan: abrir
+ * una sesión ya no paga la apertura del archivo ni la configuración de la conexión.
+ * </p>
+ *
+ * <h2>Configuración</h2>
+ * <ul>
+ *   <li>Toma la URL de {@code jakarta.persistence.jdbc.url}.</li>
+ *   <li>Todas las conexiones: {@code journal_mode=WAL} y {@code busy_timeout} (por defecto
+ *       5000 ms).</li>
+ *   <li>{@code synchronous}: {@code FULL} en la conexión de escritura
+ *       ({@code biblioteca.sqlite.synchronous.escritura}), para que cada confirmación llegue al
+ *       disco antes de responder; con {@code NORMAL} en WAL una confirmación reconocida puede
+ *       perderse ante un corte de energía. Los lectores no confirman escrituras y usan
+ *       {@code NORMAL} ({@code biblioteca.sqlite.synchronous.lectura}).</li>
+ *   <li>Lectores: {@code PRAGMA query_only}; su cantidad se fija con
+ *       {@code biblioteca.pool.lectores} (por defecto, los núcleos disponibles).</li>
+ *   <li>El pool se elige explícitamente al abrir cada sesión: Hibernate lo registra como
+ *       proveedor <em>multi-tenant</em> ({@code hibernate.multi_tenant_connection_provider}) y
+ *       {@link JpaUtil} abre las sesiones con el identificador {@link #ESCRITURA} o
+ *       {@link #LECTURA}. No depende del estado del hilo; una sesión sin identificador falla
+ *       al abrirse. La conexión se toma al necesitarla y se devuelve al terminar la
+ *       transacción (modo por omisión de Hibernate), así que un {@code EntityManager} abierto
+ *       no retiene al único escritor fuera de sus transacciones.</li>
+ *   <li>Con multi-tenant, Hibernate incluiría el identificador en las claves de la caché de
+ *       segundo nivel; {@link FabricaRegionesCache} lo omite, para que lectores y escritor
+ *       compartan las mismas entradas.</li>
+ *   <li>Las conexiones entregadas se instrumentan con {@link MetricasSql} salvo que
+ *       {@code biblioteca.metricas.sql} sea {@code false}.</li>
+ * </ul>
+ */
+public class ProveedorConexionesSQLite implements MultiTenantConnectionProvider<String>, Configurable, Stoppable {
+
+    /** Identificador de sesión que usa la conexión de escritura. */
+    public static final String ESCRITURA = "escritura";
+
+    /** Identificador de sesión que usa el pool de lectura ({@code PRAGMA query_only}). */
+    public static final String LECTURA = "lectura";
+
+    /** Instancia configurada por Hibernate; permite consultar el estado de los pools. */
+    private static volatile ProveedorConexionesSQLite actual;
+
+    private HikariDataSource escritura;
+    private HikariDataSource lectura;
+    private boolean medirSql;
+
+    /**
+     * Estado de los pools.
+     *
+     * @return por pool ({@code escritura}, {@code lectura}): {@code activas}, {@code inactivas},
+     *         {@code total} y {@code esperando}; vacío si el proveedor aún no se configuró.
+     */
+    public static Map<String, Map<String, Integer>> estadisticas() {
+        ProveedorConexionesSQLite p = actual;
+        Map<String, Map<String, Integer>> m = new LinkedHashMap<>();
+        if (p == null) return m;
+        m.put("escritura", estado(p.escritura.getHikariPoolMXBean()));
+        m.put("lectura", estado(p.lectura.getHikariPoolMXBean()));
+        return m;
+    }
+
+    private static Map<String, Integer> estado(HikariPoolMXBean pool) {
+        Map<String, Integer> m = new LinkedHashMap<>();
+        m.put("activas", pool.getActiveConnections());
+        m.put("inactivas", pool.getIdleConnections());
+        m.put("total", pool.getTotalConnections());
+        m.put("esperando", pool.getThreadsAwaitingConnection());
+        return m;
+    }
+
+    @Override
+    public void configure(Map<String, Object> settings) {
+        String url = (String) settings.get("jakarta.persistence.jdbc.url");
+        int lectores = Integer.parseInt(String.valueOf(settings.getOrDefault("biblioteca.pool.lectores",
+                Runtime.getRuntime().availableProcessors())));
+        String busyTimeout = String.valueOf(settings.getOrDefault("biblioteca.sqlite.busy_timeout", "5000"));
+        String syncEscritura = String.valueOf(settings.getOrDefault("biblioteca.sqlite.synchronous.escritura", "FULL"));
+        String syncLectura = String.valueOf(settings.getOrDefault("biblioteca.sqlite.synchronous.lectura", "NORMAL"));
+        medirSql = Boolean.parseBoolean(String.valueOf(settings.getOrDefault("biblioteca.metricas.sql", "true")));
+
+        HikariConfig cfgEscritura = base(url, busyTimeout, syncEscritura);
+        cfgEscritura.setPoolName("sqlite-escritura");
+        cfgEscritura.setMaximumPoolSize(1);
+        escritura = new HikariDataSource(cfgEscritura);
+
+        HikariConfig cfgLectura = base(url, busyTimeout, syncLectura);
+        cfgLectura.setPoolName("sqlite-lectura");
+        cfgLectura.setMaximumPoolSize(Math.max(1, lectores));
+        cfgLectura.setConnectionInitSql("PRAGMA query_only = ON");
+        lectura = new HikariDataSource(cfgLectura);
+
+        actual = this;
+    }
+
+    private static HikariConfig base(String url, String busyTimeout, String synchronous) {
+        HikariConfig c = new HikariConfig();
+        c.setJdbcUrl(url);
+        // Propiedades de conexión de sqlite-jdbc (pragmas aplicados al abrir cada conexión)
+        c.addDataSourceProperty("journal_mode", "WAL");
+        c.addDataSourceProperty("synchronous", synchronous);
+        c.addDataSourceProperty("busy_timeout", busyTimeout);
+        return c;
+    }
+
+    /** Conexión para tareas sin sesión (creación del esquema, script de carga): la de escritura. */
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        return getConnection(ESCRITURA);
+    }
+
+    @Override
+    public void releaseAnyConnection(Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    @Override
+    public Connection getConnection(String pool) throws SQLException {
+        HikariDataSource ds = switch (pool) {
+            case ESCRITURA -> escritura;
+            case LECTURA -> lectura;
+            default -> throw new IllegalArgumentException("Pool desconocido: " + pool);
+        };
+        Connection c = ds.getConnection();
+        return medirSql ? MetricasSql.instrumentar(c) : c;
+    }
+
+    @Override
+    public void releaseConnection(String pool, Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        if (lectura != null) lectura.close();
+        if (escritura != null) escritura.close();
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> tipo) {
+        return tipo.isInstance(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> tipo) {
+        if (tipo.isInstance(this)) return (T) this;
+        throw new UnknownUnwrapTypeException(tipo);
+    }
+}
@@ -0,0 +1,144 @@
+package cl.biblioteca.servicio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Caché en proceso de las respuestas de reportes, versionada por un contador del catálogo.
+ *
+ * <p>
+ * Toda operación que modifique datos (carga de semilla, préstamos, importaciones futuras) debe
+ * invocar {@link #registrarCambio()}. Cada entrada guarda la versión con la que fue calculada;
+ * si la versión actual es distinta, la entrada se considera obsoleta y se recalcula. Así, las
+ * consultas repetidas del tablero cuestan una búsqueda en un mapa en lugar de un recorrido de
+ * la base de datos.
+ * </p>
+ *
+ * <h2>ETag</h2>
+ * <ul>
+ *   <li>Las entradas llevan un ETag <em>fuerte</em> derivado de la versión y de un CRC32 del
+ *       contenido, apto para responder {@code If-None-Match} con {@code 304}.</li>
+ *   <li>Para respuestas que no conviene retener en memoria (p. ej., el inventario transmitido),
+ *       {@link #etagVersion(String)} entrega un ETag que sólo depende de la versión.</li>
+ *   <li>Ambos incluyen un identificador del arranque, de modo que un ETag emitido antes de un
+ *       reinicio nunca coincide por accidente con la nueva versión 0.</li>
+ * </ul>
+ *
+ * <h2>Notas</h2>
+ * <ul>
+ *   <li>Si un cambio ocurre mientras se calcula una entrada, ésta queda marcada con la versión
+ *       anterior y se recalcula en la siguiente solicitud: nunca se sirven datos obsoletos.</li>
+ *   <li>La cantidad de entradas está acotada ({@value #MAX_ENTRADAS}); se descartan las menos
+ *       usadas recientemente.</li>
+ *   <li>Los cálculos concurrentes de una misma clave y versión se coalescen con
+ *       {@link VueloUnico}: ante una ráfaga de solicitudes, la base de datos se consulta una vez.</li>
+ * </ul>
+ */
+public final class CacheReportes {
+
+    /** Máximo de entradas retenidas (p. ej., páginas distintas del inventario). */
+    private static final int MAX_ENTRADAS = 256;
+
+    /** Identificador del arranque actual, incluido en cada ETag. */
+    private static final String ARRANQUE = Long.toString(System.currentTimeMillis(), 36);
+
+    /** Versión del catálogo; se incrementa en cada escritura. */
+    private static final AtomicLong version = new AtomicLong();
+
+    private static final Map<String, Entrada> entradas = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+                    return size() > MAX_ENTRADAS;
+                }
+            });
+
+    /** Coalescencia de los cálculos en curso, por clave y versión. */
+    private static final VueloUnico<Entrada> vuelos = new VueloUnico<>();
+
+    private static final LongAdder aciertos = new LongAdder();
+    private static final LongAdder fallos = new LongAdder();
+
+    /**
+     * Respuesta cacheada.
+     *
+     * @param version versión del catálogo con la que se calculó.
+     * @param etag    ETag fuerte (incluye comillas).
+     * @param cuerpo  contenido de la respuesta.
+     */
+    public record Entrada(long version, String etag, String cuerpo) { }
+
+    private CacheReportes() { }
+
+    /** @return versión actual del catálogo. */
+    public static long version() {
+        return version.get();
+    }
+
+    /** Registra una escritura: invalida todas las entradas calculadas con versiones anteriores. */
+    public static void registrarCambio() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Obtiene la entrada de {@code clave} para la versión actual, calculándola con
+     * {@code generador} sólo si no existe o está obsoleta.
+     *
+     * @param clave     identificador de la respuesta (incluidos sus parámetros).
+     * @param generador cálculo del contenido cuando no hay entrada vigente.
+     * @return entrada vigente con su ETag.
+     */
+    public static Entrada obtener(String clave, Supplier<String> generador) {
+        long v = version.get();
+        Entrada e = entradas.get(clave);
+        if (e != null && e.version() == v) {
+            aciertos.increment();
+            return e;
+        }
+        fallos.increment();
+
+        return vuelos.ejecutar(clave + "@" + v, () -> {
+            String cuerpo = generador.get();
+            CRC32 crc = new CRC32();
+            crc.update(cuerpo.getBytes(StandardCharsets.UTF_8));
+            Entrada nueva = new Entrada(v, "\"" + ARRANQUE + "-" + v + "-" + Long.toHexString(crc.getValue()) + "\"", cuerpo);
+            entradas.put(clave, nueva);
+            return nueva;
+        });
+    }
+
+    /**
+     * Resume el estado de la caché y de la coalescencia de cálculos.
+     *
+     * @return mapa con {@code version}, {@code entradas}, {@code aciertos}, {@code fallos},
+     *         {@code calculos}, {@code coalescidas} y {@code enCurso}.
+     */
+    public static Map<String, Long> estadisticas() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        m.put("version", version.get());
+        m.put("entradas", (long) entradas.size());
+        m.put("aciertos", aciertos.sum());
+        m.put("fallos", fallos.sum());
+        m.put("calculos", vuelos.ejecuciones());
+        m.put("coalescidas", vuelos.coalescidas());
+        m.put("enCurso", (long) vuelos.enCurso());
+        return m;
+    }
+
+    /**
+     * ETag fuerte que depende sólo de la versión del catálogo; válido para respuestas
+     * deterministas que se generan bajo demanda sin retenerse en la caché.
+     *
+     * @param clave identificador de la respuesta.
+     * @return ETag con comillas.
+     */
+    public static String etagVersion(String clave) {
+        return "\"" + clave + "-" + ARRANQUE + "-" + version.get() + "\"";
+    }
+}
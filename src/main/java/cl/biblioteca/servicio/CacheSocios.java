@@ -0,0 +1,100 @@
+package cl.biblioteca.servicio;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caché en proceso del resumen de cuenta de cada socio ({@link ServicioSocios#resumen}).
+ *
+ * <p>
+ * A diferencia de {@link CacheReportes}, que se invalida completa ante cualquier escritura,
+ * aquí se invalida sólo la entrada del socio afectado: préstamos y devoluciones deben invocar
+ * {@link #invalidar(long)} con el socio del préstamo. El resto de los socios sigue
+ * respondiéndose desde memoria.
+ * </p>
+ *
+ * <h2>Notas</h2>
+ * <ul>
+ *   <li>Una entrada vale sólo para el día en que se calculó (las multas abiertas se devengan a
+ *       esa fecha) y para los parámetros de multa con que se calculó; si cambia alguno de los
+ *       dos, se recalcula.</li>
+ *   <li>Si una invalidación ocurre mientras se calcula un resumen, el resultado se entrega
+ *       pero no se guarda: nunca queda en la caché un resumen anterior a la escritura.</li>
+ *   <li>La cantidad de entradas está acotada ({@value #MAX_ENTRADAS}); se descartan las menos
+ *       usadas recientemente.</li>
+ * </ul>
+ */
+public final class CacheSocios {
+
+    /** Máximo de socios retenidos. */
+    private static final int MAX_ENTRADAS = 10_000;
+
+    /** Cantidad de invalidaciones realizadas; detecta escrituras durante un cálculo. */
+    private static final AtomicLong invalidaciones = new AtomicLong();
+
+    private static final Map<Long, Entrada> entradas = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entrada> eldest) {
+                    return size() > MAX_ENTRADAS;
+                }
+            });
+
+    private static final LongAdder aciertos = new LongAdder();
+    private static final LongAdder fallos = new LongAdder();
+
+    /** Resumen cacheado con la fecha y los parámetros con que se calculó. */
+    private record Entrada(LocalDate fecha, ParametrosMulta parametros, Map<String, Object> resumen) { }
+
+    private CacheSocios() { }
+
+    /**
+     * Obtiene el resumen vigente de {@code socioId}, calculándolo con {@code generador} sólo si no
+     * existe o está obsoleto.
+     *
+     * @param generador cálculo del resumen; si devuelve {@code null} (socio inexistente) no se guarda.
+     */
+    public static Map<String, Object> obtener(long socioId, LocalDate hoy, Supplier<Map<String, Object>> generador) {
+        ParametrosMulta parametros = RegistroCadenasMulta.parametros();
+        Entrada e = entradas.get(socioId);
+        if (e != null && e.fecha().equals(hoy) && e.parametros() == parametros) {
+            aciertos.increment();
+            return e.resumen();
+        }
+        fallos.increment();
+
+        long antes = invalidaciones.get();
+        Map<String, Object> resumen = generador.get();
+        if (resumen != null) {
+            synchronized (entradas) {
+                if (invalidaciones.get() == antes) {
+                    entradas.put(socioId, new Entrada(hoy, parametros, Collections.unmodifiableMap(resumen)));
+                }
+            }
+        }
+        return resumen;
+    }
+
+    /** Descarta el resumen de {@code socioId}; invocar tras confirmar un préstamo o devolución suyos. */
+    public static void invalidar(long socioId) {
+        synchronized (entradas) {
+            invalidaciones.incrementAndGet();
+            entradas.remove(socioId);
+        }
+    }
+
+    /** @return mapa con {@code entradas}, {@code aciertos}, {@code fallos} e {@code invalidaciones}. */
+    public static Map<String, Long> estadisticas() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        m.put("entradas", (long) entradas.size());
+        m.put("aciertos", aciertos.sum());
+        m.put("fallos", fallos.sum());
+        m.put("invalidaciones", invalidaciones.get());
+        return m;
+    }
+}
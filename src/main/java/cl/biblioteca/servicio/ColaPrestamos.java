@@ -0,0 +1,223 @@
+package cl.biblioteca.servicio;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cola de préstamos con <strong>confirmación agrupada</strong> (<em>group commit</em>).
+ *
+ * <p>
+ * SQLite admite un solo escritor y cada confirmación paga un {@code fsync} (la conexión de
+ * escritura usa {@code synchronous=FULL}; ver {@code ProveedorConexionesSQLite}). En lugar de que
+ * cada solicitud abra su transacción y compita por el bloqueo ({@code SQLITE_BUSY}), los
+ * préstamos se encolan y un único hilo escritor los confirma en lotes con
+ * {@link ServicioPrestamos#prestarLote}. Con carga, cada {@code fsync} cubre muchos préstamos.
+ * </p>
+ *
+ * <h2>Funcionamiento</h2>
+ * <ul>
+ *   <li>{@link #encolar(NuevoPrestamo)} devuelve un futuro que se completa con el id asignado
+ *       sólo cuando el lote que lo contiene está confirmado.</li>
+ *   <li>El escritor espera el primer préstamo y reúne los que lleguen hasta
+ *       {@link #LATENCIA_MAXIMA_MS} después, o hasta {@link #LOTE_MAXIMO}; así, un préstamo
+ *       aislado no espera más que esa latencia.</li>
+ *   <li>Antes de confirmar se descartan, cada uno con su excepción, los préstamos que harían
+ *       fallar el lote: tipo desconocido, socio inexistente (una consulta {@code IN} para todo
+ *       el lote) o material ya prestado, también por otro préstamo del mismo lote. Un préstamo
+ *       inválido no obliga a confirmar el resto uno a uno.</li>
+ *   <li>Si la transacción falla de todos modos (p. ej., otra vía prestó el material entre la
+ *       verificación y la reserva), el lote se divide en mitades hasta aislar los inválidos:
+ *       unas pocas confirmaciones por préstamo inválido en lugar de una por préstamo.</li>
+ *   <li>Cualquier otro fallo del escritor, incluidos los {@link Error} (p. ej., al iniciar JPA o
+ *       por falta de memoria en un lote), termina los futuros del lote en curso con esa causa y
+ *       el escritor sigue atendiendo la cola. Si el hilo llegara a detenerse, los pendientes
+ *       y los nuevos préstamos terminan con {@link RejectedExecutionException}.</li>
+ *   <li>Ambos límites se configuran con las propiedades de sistema
+ *       {@code biblioteca.prestamos.latenciaMaximaMs} (5 por defecto) y
+ *       {@code biblioteca.prestamos.loteMaximo} (500 por defecto).</li>
+ * </ul>
+ */
+public final class ColaPrestamos {
+
+    /** Espera máxima, desde el primer préstamo del lote, antes de confirmarlo. */
+    public static final long LATENCIA_MAXIMA_MS = Long.getLong("biblioteca.prestamos.latenciaMaximaMs", 5);
+
+    /** Préstamos máximos por transacción. */
+    public static final int LOTE_MAXIMO = Integer.getInteger("biblioteca.prestamos.loteMaximo", 500);
+
+    /** Préstamo encolado y el futuro de su llamador. */
+    private record Pendiente(NuevoPrestamo datos, CompletableFuture<Long> resultado) { }
+
+    private static final BlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+
+    private static final LongAdder lotes = new LongAdder();
+    private static final LongAdder confirmados = new LongAdder();
+    private static final LongAdder fallidos = new LongAdder();
+    private static final LongAdder reintentos = new LongAdder();
+
+    private static final Thread escritor = new Thread(ColaPrestamos::escribir, "cola-prestamos");
+
+    static {
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    private ColaPrestamos() { }
+
+    /**
+     * Encola un préstamo para el próximo lote.
+     *
+     * @return futuro con el id asignado, completado tras la confirmación; termina con la
+     *         excepción de persistencia si el préstamo no pudo crearse, o con
+     *         {@link RejectedExecutionException} si el hilo escritor ya no está activo.
+     */
+    public static CompletableFuture<Long> encolar(NuevoPrestamo datos) {
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        if (!escritor.isAlive()) {
+            f.completeExceptionally(new RejectedExecutionException("El escritor de préstamos no está activo"));
+            return f;
+        }
+        cola.add(new Pendiente(datos, f));
+        // Si el escritor terminó entre la verificación y el encolado, nadie más vaciará la cola
+        if (!escritor.isAlive()) rechazarPendientes();
+        return f;
+    }
+
+    /**
+     * Resume la actividad de la cola.
+     *
+     * @return mapa con {@code enCola}, {@code lotes}, {@code confirmados}, {@code fallidos},
+     *         {@code reintentos} (lotes que fallaron y se dividieron en mitades) y
+     *         {@code promedioPorLote}.
+     */
+    public static Map<String, Object> estadisticas() {
+        long l = lotes.sum();
+        long c = confirmados.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enCola", cola.size());
+        m.put("lotes", l);
+        m.put("confirmados", c);
+        m.put("fallidos", fallidos.sum());
+        m.put("reintentos", reintentos.sum());
+        m.put("promedioPorLote", l == 0 ? 0.0 : (double) c / l);
+        m.put("latenciaMaximaMs", LATENCIA_MAXIMA_MS);
+        m.put("loteMaximo", LOTE_MAXIMO);
+        return m;
+    }
+
+    /** Ciclo del hilo escritor. */
+    private static void escribir() {
+        ServicioPrestamos servicio = new ServicioPrestamos();
+        List<Pendiente> lote = new ArrayList<>(LOTE_MAXIMO);
+        while (true) {
+            try {
+                lote.add(cola.take());
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LATENCIA_MAXIMA_MS);
+                while (lote.size() < LOTE_MAXIMO) {
+                    long restante = limite - System.nanoTime();
+                    if (cola.drainTo(lote, LOTE_MAXIMO - lote.size()) > 0) continue;
+                    if (restante <= 0) break;
+                    Pendiente p = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    lote.add(p);
+                }
+                confirmar(servicio, lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Pendiente p : lote) p.resultado().completeExceptionally(e);
+                rechazarPendientes();
+                return;
+            } catch (Throwable e) {
+                for (Pendiente p : lote) p.resultado().completeExceptionally(e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /** Termina con {@link RejectedExecutionException} los préstamos que quedaron en la cola. */
+    private static void rechazarPendientes() {
+        Pendiente p;
+        while ((p = cola.poll()) != null) {
+            p.resultado().completeExceptionally(new RejectedExecutionException("El escritor de préstamos no está activo"));
+        }
+    }
+
+    /** Descarta los préstamos inválidos del lote y confirma el resto en una transacción. */
+    private static void confirmar(ServicioPrestamos servicio, List<Pendiente> lote) {
+        Set<Long> socios = new HashSet<>();
+        for (Pendiente p : lote) socios.add(p.datos().socioId());
+        Set<Long> existentes = servicio.sociosExistentes(socios);
+
+        Set<String> materiales = new HashSet<>();
+        List<Pendiente> validos = new ArrayList<>(lote.size());
+        for (Pendiente p : lote) {
+            RuntimeException error = validar(p.datos(), existentes, materiales);
+            if (error == null) {
+                validos.add(p);
+            } else {
+                fallidos.increment();
+                p.resultado().completeExceptionally(error);
+            }
+        }
+        if (!validos.isEmpty()) confirmarValidos(servicio, validos);
+    }
+
+    /**
+     * Verifica lo mismo que {@link ServicioPrestamos#prestarLote}, sin reservar nada.
+     *
+     * @param materiales materiales abiertos por los préstamos anteriores del lote; se le agrega
+     *                   el de {@code n} si es válido.
+     * @return la excepción con que {@code prestarLote} rechazaría el préstamo, o {@code null}.
+     */
+    private static RuntimeException validar(NuevoPrestamo n, Set<Long> socios, Set<String> materiales) {
+        if (!ServicioReportes.TIPOS.contains(n.tipoMaterial())) {
+            return new IllegalArgumentException("Tipo de material desconocido: " + n.tipoMaterial());
+        }
+        if (!socios.contains(n.socioId())) {
+            return new IllegalArgumentException("Socio no encontrado: " + n.socioId());
+        }
+        if (n.fechaDevolucion() == null
+                && (n.idMaterial() <= 0
+                    || IndiceDisponibilidad.prestamoActivo(n.tipoMaterial(), n.idMaterial()) != 0
+                    || !materiales.add(n.tipoMaterial() + " " + n.idMaterial()))) {
+            return new IllegalStateException("Material ya prestado: " + n.tipoMaterial() + " " + n.idMaterial());
+        }
+        return null;
+    }
+
+    /** Confirma el lote en una transacción; si falla, confirma cada mitad por separado. */
+    private static void confirmarValidos(ServicioPrestamos servicio, List<Pendiente> lote) {
+        List<NuevoPrestamo> datos = new ArrayList<>(lote.size());
+        for (Pendiente p : lote) datos.add(p.datos());
+
+        List<Long> ids;
+        try {
+            ids = servicio.prestarLote(datos);
+        } catch (RuntimeException e) {
+            if (lote.size() == 1) {
+                fallidos.increment();
+                lote.get(0).resultado().completeExceptionally(e);
+                return;
+            }
+            reintentos.increment();
+            int mitad = lote.size() / 2;
+            confirmarValidos(servicio, lote.subList(0, mitad));
+            confirmarValidos(servicio, lote.subList(mitad, lote.size()));
+            return;
+        }
+        lotes.increment();
+        confirmados.add(ids.size());
+        for (int i = 0; i < lote.size(); i++) lote.get(i).resultado().complete(ids.get(i));
+    }
+}
@@ -0,0 +1,14 @@
+package cl.biblioteca.servicio;
+
+/**
+ * Fila del inventario resumido, tal como la expone {@code GET /api/inventory}.
+ *
+ * <p>Es una proyección de solo lectura: se construye directamente desde columnas de la base
+ * de datos, sin hidratar entidades administradas.</p>
+ *
+ * @param type  tipo de material ({@code Libro}, {@code Revista} o {@code Video}).
+ * @param title título del material.
+ * @param meta  metadato breve del tipo ({@code ISBN=...}, {@code issue=...}, {@code duration=...}).
+ */
+public record FilaInventario(String type, String title, String meta) {
+}
@@ -0,0 +1,101 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+
+/**
+ * Índice en memoria de <strong>disponibilidad</strong> de materiales: material &rarr; préstamo
+ * activo (sin {@code fechaDevolucion}).
+ *
+ * <p>
+ * Responde «¿está prestado?» en O(1), sin consultar la base de datos ni asignar memoria, y
+ * hace atómica la reserva de un material al prestarlo: dos préstamos concurrentes del mismo
+ * material no pueden confirmarse ambos.
+ * </p>
+ *
+ * <h2>Consistencia</h2>
+ * <ul>
+ *   <li>{@link #cargar()} lo construye al arrancar a partir de los préstamos abiertos.</li>
+ *   <li>Prestar: {@link #reservar} antes de la transacción (falla si el material ya está
+ *       prestado o reservado), {@link #confirmar} con el id tras el commit, o
+ *       {@link #liberar} si la transacción se revierte.</li>
+ *   <li>Devolver: {@link #liberar} con el id del préstamo devuelto, tras el commit.</li>
+ *   <li>La clave es {@code id * 4 + tipo} (0 = Libro, 1 = Revista, 2 = Video), la misma
+ *       codificación que usa {@link ServicioBusqueda}.</li>
+ * </ul>
+ */
+public final class IndiceDisponibilidad {
+
+    /** Valor de un material reservado por un préstamo aún no confirmado. */
+    public static final long RESERVADO = -1;
+
+    private static final MapaLongLong activos = new MapaLongLong(1024);
+
+    private IndiceDisponibilidad() { }
+
+    /** Carga el índice con los préstamos abiertos. Debe invocarse al arrancar la aplicación. */
+    public static void cargar() {
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try (ScrollableResults<Object[]> filas = ss.createSelectionQuery(
+                        "select p.tipoMaterial, p.idMaterial, p.id from Prestamo p where p.fechaDevolucion is null",
+                        Object[].class)
+                .setFetchSize(1000)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (filas.next()) {
+                Object[] f = filas.get();
+                long clave = clave((String) f[0], (Long) f[1]);
+                if (clave > 0) activos.ponerSiAusente(clave, (Long) f[2]);
+            }
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * @return id del préstamo activo del material, {@link #RESERVADO} si se está prestando en
+     *         este momento, o {@code 0} si está disponible (o el tipo no existe).
+     */
+    public static long prestamoActivo(String tipo, long idMaterial) {
+        long clave = clave(tipo, idMaterial);
+        return clave > 0 ? activos.obtener(clave) : 0;
+    }
+
+    /**
+     * Reserva el material para un préstamo en curso.
+     *
+     * @throws IllegalStateException si el material ya está prestado o reservado.
+     */
+    public static void reservar(String tipo, long idMaterial) {
+        long clave = clave(tipo, idMaterial);
+        if (clave <= 0 || activos.ponerSiAusente(clave, RESERVADO) != 0) {
+            throw new IllegalStateException("Material ya prestado: " + tipo + " " + idMaterial);
+        }
+    }
+
+    /** Asocia la reserva del material al préstamo confirmado. */
+    public static void confirmar(String tipo, long idMaterial, long prestamoId) {
+        activos.poner(clave(tipo, idMaterial), prestamoId);
+    }
+
+    /**
+     * Libera el material si está asociado a {@code prestamoId} (o a {@link #RESERVADO}, para
+     * una reserva revertida).
+     */
+    public static void liberar(String tipo, long idMaterial, long prestamoId) {
+        long clave = clave(tipo, idMaterial);
+        if (clave > 0) activos.quitar(clave, prestamoId);
+    }
+
+    /** @return cantidad de materiales prestados o reservados. */
+    public static int prestados() {
+        return activos.tamano();
+    }
+
+    /** @return clave del material, o {@code -1} si el tipo no existe o el id no es positivo. */
+    private static long clave(String tipo, long idMaterial) {
+        int t = ServicioReportes.TIPOS.indexOf(tipo);
+        return t < 0 || idMaterial <= 0 ? -1 : idMaterial * 4 + t;
+    }
+}
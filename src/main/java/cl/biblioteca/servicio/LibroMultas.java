@@ -0,0 +1,340 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.StatelessSession;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Libro de <strong>multas devengadas</strong>: una fila por préstamo en la tabla
+ * {@code MultaDevengada}, recalculada por un proceso nocturno.
+ *
+ * <p>
+ * Los préstamos devueltos registran su multa final; los abiertos, la multa acumulada a la
+ * fecha de corte (se evalúan como si se devolvieran ese día). Con el libro al día, el saldo de
+ * un socio es una sola lectura sobre el índice {@code (socio_id, montoCentavos)}.
+ * </p>
+ *
+ * <h2>Proceso</h2>
+ * <ul>
+ *   <li>Recorre {@code Prestamo} por clave ({@code id > último}) en lotes de
+ *       {@value #TAMANO_LOTE}; cada lote se carga en unas mismas {@link ColumnasPrestamos},
+ *       se calcula con {@link MotorMultasColumnar} y se escribe con un <em>upsert</em> JDBC en
+ *       lote, en su propia transacción. La memoria es constante con cualquier tamaño de tabla.</li>
+ *   <li>Entre lotes no se retiene ningún cursor ni bloqueo, de modo que las solicitudes
+ *       interactivas se intercalan con el proceso en lugar de esperarlo.</li>
+ *   <li>Se ejecuta en un único hilo de baja prioridad, cada noche a las
+ *       {@link #HORA_EJECUCION} o a pedido ({@link #ejecutarAhora()}); nunca hay dos corridas
+ *       simultáneas.</li>
+ *   <li>Usa la política completa ({@link #REGLAS}) con los parámetros vigentes de
+ *       {@link RegistroCadenasMulta}.</li>
+ * </ul>
+ */
+public final class LibroMultas {
+
+    /** Préstamos por lote de lectura y de escritura. */
+    public static final int TAMANO_LOTE = 1000;
+
+    /** Hora local de la corrida nocturna. */
+    public static final LocalTime HORA_EJECUCION = LocalTime.of(2, 0);
+
+    /** Reglas con que se devengan las multas: todas activas. */
+    public static final ReglasMulta REGLAS = new ReglasMulta(true, true, true);
+
+    private static final String UPSERT = """
+            insert into MultaDevengada(prestamo_id, socio_id, diasAtraso, montoCentavos, abierto, fechaCorte)
+            values (?, ?, ?, ?, ?, ?)
+            on conflict(prestamo_id) do update set
+                socio_id = excluded.socio_id, diasAtraso = excluded.diasAtraso,
+                montoCentavos = excluded.montoCentavos, abierto = excluded.abierto,
+                fechaCorte = excluded.fechaCorte
+            """;
+
+    private static final ScheduledExecutorService hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "libro-multas");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final AtomicBoolean enCurso = new AtomicBoolean();
+
+    // Métricas de la corrida actual o de la última
+    private static volatile String estado = "inactivo";
+    private static volatile LocalDate fechaCorte;
+    private static volatile Instant inicio;
+    private static volatile Instant fin;
+    private static volatile String ultimoError;
+    private static volatile LocalDateTime proximaEjecucion;
+    private static final AtomicLong total = new AtomicLong();
+    private static final AtomicLong procesados = new AtomicLong();
+    private static final AtomicLong abiertos = new AtomicLong();
+    private static final AtomicLong lotes = new AtomicLong();
+    private static final AtomicLong montoTotalCentavos = new AtomicLong();
+
+    private LibroMultas() { }
+
+    /**
+     * Crea la tabla del libro y su índice por socio si no existen. Debe invocarse al arrancar
+     * la aplicación, después de crear el esquema.
+     */
+    public static void prepararTabla() {
+        EntityManager em = JpaUtil.em();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            em.createNativeQuery("""
+                    create table if not exists MultaDevengada(
+                        prestamo_id   integer primary key,
+                        socio_id      integer not null,
+                        diasAtraso    integer not null,
+                        montoCentavos integer not null,
+                        abierto       integer not null,
+                        fechaCorte    text not null)
+                    """).executeUpdate();
+            em.createNativeQuery("create index if not exists idx_multadevengada_socio"
+                    + " on MultaDevengada(socio_id, montoCentavos)").executeUpdate();
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Programa la corrida diaria a las {@link #HORA_EJECUCION}. */
+    public static void programar() {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime proxima = ahora.toLocalDate().atTime(HORA_EJECUCION);
+        if (!proxima.isAfter(ahora)) proxima = proxima.plusDays(1);
+        proximaEjecucion = proxima;
+        hilo.schedule(() -> {
+            try {
+                correr(LocalDate.now());   // se omite si hay una corrida a pedido en curso
+            } finally {
+                programar();
+            }
+        }, Duration.between(ahora, proxima).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lanza una corrida en segundo plano con corte a hoy. La marca de corrida en curso se toma
+     * aquí, antes de encolarla, con el mismo {@code compareAndSet} que usa la corrida nocturna:
+     * dos pedidos simultáneos no pueden encolar dos corridas.
+     *
+     * @return {@code false} si ya hay una corrida en curso (no se lanza otra).
+     */
+    public static boolean ejecutarAhora() {
+        if (!enCurso.compareAndSet(false, true)) return false;
+        LocalDate corte = LocalDate.now();
+        try {
+            reiniciarMetricas(corte);
+            hilo.execute(() -> recalcular(corte));
+        } catch (RuntimeException e) {
+            estado = "fallido";
+            ultimoError = e.toString();
+            enCurso.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Saldo de multas de un socio según el libro.
+     *
+     * @return mapa con {@code socioId}, {@code prestamos}, {@code saldo} (pesos) y
+     *         {@code fechaCorte} (la más reciente de sus filas, o {@code null}).
+     */
+    public static Map<String, Object> saldoSocio(long socioId) {
+        EntityManager em = JpaUtil.emLectura();
+        try {
+            Object[] f = (Object[]) em.createNativeQuery("""
+                    select count(*), coalesce(sum(montoCentavos), 0), max(fechaCorte)
+                    from MultaDevengada where socio_id = ?1
+                    """).setParameter(1, socioId).getSingleResult();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("socioId", socioId);
+            m.put("prestamos", ((Number) f[0]).longValue());
+            m.put("saldo", ((Number) f[1]).longValue() / 100.0);
+            m.put("fechaCorte", f[2]);
+            return m;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Progreso de la corrida actual o resultado de la última.
+     *
+     * @return mapa con {@code estado}, {@code fechaCorte}, {@code inicio}, {@code fin},
+     *         {@code duracionMs}, {@code total}, {@code procesados}, {@code abiertos},
+     *         {@code lotes}, {@code montoTotal}, {@code ultimoError} y {@code proximaEjecucion}.
+     */
+    public static Map<String, Object> estado() {
+        Instant i = inicio;
+        Instant f = fin;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("estado", estado);
+        m.put("fechaCorte", fechaCorte == null ? null : fechaCorte.toString());
+        m.put("inicio", i == null ? null : i.toString());
+        m.put("fin", f == null ? null : f.toString());
+        m.put("duracionMs", i == null ? null : Duration.between(i, f == null ? Instant.now() : f).toMillis());
+        m.put("total", total.get());
+        m.put("procesados", procesados.get());
+        m.put("abiertos", abiertos.get());
+        m.put("lotes", lotes.get());
+        m.put("montoTotal", montoTotalCentavos.get() / 100.0);
+        m.put("ultimoError", ultimoError);
+        m.put("proximaEjecucion", proximaEjecucion == null ? null : proximaEjecucion.toString());
+        return m;
+    }
+
+    /**
+     * Recalcula el libro completo con corte a {@code corte}, en el hilo que lo invoca. No hace
+     * nada si ya hay una corrida en curso.
+     */
+    static void correr(LocalDate corte) {
+        if (!enCurso.compareAndSet(false, true)) return;
+        reiniciarMetricas(corte);
+        recalcular(corte);
+    }
+
+    /** Cuerpo de la corrida; quien lo invoca ya tomó {@code enCurso}, que aquí se libera. */
+    private static void recalcular(LocalDate corte) {
+        try {
+            total.set(contarPrestamos());
+
+            MotorMultasColumnar motor = RegistroCadenasMulta.motor(REGLAS);
+            ColumnasPrestamos lote = new ColumnasPrestamos(TAMANO_LOTE);
+            long[] socios = new long[TAMANO_LOTE];
+            boolean[] abierto = new boolean[TAMANO_LOTE];
+            long[] montos = new long[TAMANO_LOTE];
+            String textoCorte = corte.toString();
+
+            long ultimo = 0;
+            while (true) {
+                lote.vaciar();
+                int n = cargarLote(ultimo, corte, lote, socios, abierto);
+                if (n == 0) break;
+                montoTotalCentavos.addAndGet(motor.calcular(lote, montos));
+                escribirLote(lote, socios, abierto, montos, textoCorte);
+
+                ultimo = lote.ids()[n - 1];
+                for (int i = 0; i < n; i++) if (abierto[i]) abiertos.incrementAndGet();
+                procesados.addAndGet(n);
+                lotes.incrementAndGet();
+                if (n < TAMANO_LOTE) break;
+            }
+            estado = "completado";
+        } catch (RuntimeException e) {
+            estado = "fallido";
+            ultimoError = e.toString();
+        } finally {
+            fin = Instant.now();
+            enCurso.set(false);
+        }
+    }
+
+    private static void reiniciarMetricas(LocalDate corte) {
+        estado = "enCurso";
+        fechaCorte = corte;
+        inicio = Instant.now();
+        fin = null;
+        ultimoError = null;
+        total.set(0);
+        procesados.set(0);
+        abiertos.set(0);
+        lotes.set(0);
+        montoTotalCentavos.set(0);
+    }
+
+    private static long contarPrestamos() {
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            return ss.createSelectionQuery("select count(p) from Prestamo p", Long.class).getSingleResult();
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Carga en {@code lote} los siguientes préstamos con {@code id > ultimo}. Los abiertos se
+     * cargan con devolución en {@code corte}.
+     *
+     * @return cantidad de préstamos cargados.
+     */
+    private static int cargarLote(long ultimo, LocalDate corte, ColumnasPrestamos lote,
+                                  long[] socios, boolean[] abierto) {
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            List<Object[]> filas = ss.createSelectionQuery("""
+                    select p.id, s.id, p.fechaVencimiento, p.fechaDevolucion, s.premium
+                    from Prestamo p join p.socio s
+                    where p.id > :ultimo order by p.id
+                    """, Object[].class)
+                    .setParameter("ultimo", ultimo)
+                    .setMaxResults(TAMANO_LOTE)
+                    .getResultList();
+            for (int i = 0; i < filas.size(); i++) {
+                Object[] f = filas.get(i);
+                LocalDate devolucion = (LocalDate) f[3];
+                socios[i] = (Long) f[1];
+                abierto[i] = devolucion == null;
+                lote.agregar((Long) f[0], (LocalDate) f[2], abierto[i] ? corte : devolucion, (Boolean) f[4]);
+            }
+            return filas.size();
+        } finally {
+            ss.close();
+        }
+    }
+
+    /** Escribe un lote con un <em>upsert</em> JDBC en lote, en una transacción propia. */
+    private static void escribirLote(ColumnasPrestamos lote, long[] socios, boolean[] abierto,
+                                     long[] montos, String textoCorte) {
+        StatelessSession ss = JpaUtil.sesionSinEstadoEscritura();
+        var tx = ss.beginTransaction();
+        try {
+            ss.doWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement(UPSERT)) {
+                    long[] ids = lote.ids();
+                    int[] vence = lote.vencimiento();
+                    int[] devuelto = lote.devolucion();
+                    for (int i = 0; i < lote.tamano(); i++) {
+                        boolean conFechas = vence[i] != ColumnasPrestamos.SIN_FECHA
+                                && devuelto[i] != ColumnasPrestamos.SIN_FECHA;
+                        ps.setLong(1, ids[i]);
+                        ps.setLong(2, socios[i]);
+                        ps.setLong(3, conFechas ? Math.max(0, (long) devuelto[i] - vence[i]) : 0);
+                        ps.setLong(4, montos[i]);
+                        ps.setInt(5, abierto[i] ? 1 : 0);
+                        ps.setString(6, textoCorte);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            });
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            ss.close();
+        }
+    }
+}
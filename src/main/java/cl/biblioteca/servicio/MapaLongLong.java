@@ -0,0 +1,171 @@
+package cl.biblioteca.servicio;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Mapa concurrente de {@code long} a {@code long} con direccionamiento abierto, sin objetos
+ * por entrada.
+ *
+ * <p>
+ * Las claves y valores viven en dos arreglos primitivos (sonda lineal), por lo que ni las
+ * lecturas ni las escrituras asignan memoria (salvo al crecer). Las lecturas son optimistas
+ * con {@link StampedLock}: no toman bloqueo salvo que coincidan con una escritura. Las
+ * escrituras se serializan con el bloqueo exclusivo, lo que hace atómico
+ * {@link #ponerSiAusente(long, long)}.
+ * </p>
+ *
+ * <p>Las claves deben ser positivas: {@code 0} marca una celda libre y {@code -1} una borrada.
+ * El valor {@code 0} se reserva para «sin valor».</p>
+ */
+final class MapaLongLong {
+
+    private static final long LIBRE = 0;
+    private static final long BORRADA = -1;
+
+    private final StampedLock candado = new StampedLock();
+    private long[] claves;
+    private long[] valores;
+    private int ocupadas;  // incluye borradas: determina cuándo crecer
+    private int tamano;
+
+    MapaLongLong(int capacidadInicial) {
+        int c = Integer.highestOneBit(Math.max(16, capacidadInicial) * 2 - 1);
+        claves = new long[c];
+        valores = new long[c];
+    }
+
+    /** @return valor asociado a {@code clave}, o {@code 0} si no existe. */
+    long obtener(long clave) {
+        long sello = candado.tryOptimisticRead();
+        long[] k = claves;
+        long[] v = valores;
+        // Durante un crecimiento concurrente los arreglos pueden no corresponder: se valida luego
+        long encontrado = k.length == v.length ? buscar(k, v, clave) : 0;
+        if (k.length == v.length && candado.validate(sello)) return encontrado;
+
+        sello = candado.readLock();
+        try {
+            return buscar(claves, valores, clave);
+        } finally {
+            candado.unlockRead(sello);
+        }
+    }
+
+    /**
+     * Asocia {@code valor} a {@code clave} sólo si no tiene valor.
+     *
+     * @return {@code 0} si se asoció, o el valor ya existente (sin modificarlo).
+     */
+    long ponerSiAusente(long clave, long valor) {
+        long sello = candado.writeLock();
+        try {
+            int i = posicion(clave);
+            if (claves[i] == clave) return valores[i];
+            insertar(i, clave, valor);
+            return 0;
+        } finally {
+            candado.unlockWrite(sello);
+        }
+    }
+
+    /** Asocia {@code valor} a {@code clave}, reemplazando el valor anterior. */
+    void poner(long clave, long valor) {
+        long sello = candado.writeLock();
+        try {
+            int i = posicion(clave);
+            if (claves[i] == clave) valores[i] = valor;
+            else insertar(i, clave, valor);
+        } finally {
+            candado.unlockWrite(sello);
+        }
+    }
+
+    /**
+     * Elimina {@code clave} sólo si está asociada a {@code esperado}.
+     *
+     * @return {@code true} si se eliminó.
+     */
+    boolean quitar(long clave, long esperado) {
+        long sello = candado.writeLock();
+        try {
+            int i = posicion(clave);
+            if (claves[i] != clave || valores[i] != esperado) return false;
+            claves[i] = BORRADA;
+            valores[i] = 0;
+            tamano--;
+            return true;
+        } finally {
+            candado.unlockWrite(sello);
+        }
+    }
+
+    /** @return cantidad de claves con valor. */
+    int tamano() {
+        long sello = candado.readLock();
+        try {
+            return tamano;
+        } finally {
+            candado.unlockRead(sello);
+        }
+    }
+
+    /** Búsqueda sin bloqueo; acotada por la capacidad aunque los arreglos cambien en paralelo. */
+    private static long buscar(long[] claves, long[] valores, long clave) {
+        int mascara = claves.length - 1;
+        int i = indice(clave, mascara);
+        for (int n = 0; n <= mascara; n++, i = (i + 1) & mascara) {
+            long k = claves[i];
+            if (k == clave) return valores[i];
+            if (k == LIBRE) return 0;
+        }
+        return 0;
+    }
+
+    /** Celda de {@code clave} si existe; si no, la primera borrada o libre de su sonda. */
+    private int posicion(long clave) {
+        int mascara = claves.length - 1;
+        int i = indice(clave, mascara);
+        int borrada = -1;
+        while (true) {
+            long k = claves[i];
+            if (k == clave) return i;
+            if (k == LIBRE) return borrada >= 0 ? borrada : i;
+            if (k == BORRADA && borrada < 0) borrada = i;
+            i = (i + 1) & mascara;
+        }
+    }
+
+    private void insertar(int i, long clave, long valor) {
+        if (claves[i] == LIBRE) ocupadas++;
+        claves[i] = clave;
+        valores[i] = valor;
+        tamano++;
+        if (ocupadas * 4L >= claves.length * 3L) redimensionar();
+    }
+
+    /** Duplica la capacidad si hay muchas claves vivas; si no, sólo descarta las borradas. */
+    private void redimensionar() {
+        int capacidad = tamano * 2L >= claves.length ? claves.length * 2 : claves.length;
+        long[] viejasClaves = claves;
+        long[] viejosValores = valores;
+        long[] nuevasClaves = new long[capacidad];
+        long[] nuevosValores = new long[capacidad];
+        int mascara = capacidad - 1;
+        for (int j = 0; j < viejasClaves.length; j++) {
+            long k = viejasClaves[j];
+            if (k == LIBRE || k == BORRADA) continue;
+            int i = indice(k, mascara);
+            while (nuevasClaves[i] != LIBRE) i = (i + 1) & mascara;
+            nuevasClaves[i] = k;
+            nuevosValores[i] = viejosValores[j];
+        }
+        claves = nuevasClaves;
+        valores = nuevosValores;
+        ocupadas = tamano;
+    }
+
+    private static int indice(long clave, int mascara) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+}
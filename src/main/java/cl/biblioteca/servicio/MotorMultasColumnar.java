@@ -0,0 +1,98 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.servicio.decorator.CalculadoraDeMulta;
+import cl.biblioteca.servicio.decorator.DescuentoPremium;
+
+/**
+ * Motor de multas masivo sobre {@link ColumnasPrestamos}, en aritmética entera de centavos.
+ *
+ * <p>
+ * Reproduce exactamente la cadena de decoradores {@link CalculadoraDeMulta}
+ * (Base &rarr; Exención &rarr; Descuento &rarr; Sobrecargo) pero, en lugar de una llamada
+ * virtual por capa y por préstamo con {@code LocalDate} y {@code double}, recorre arreglos
+ * primitivos en un único ciclo sin asignaciones. Las reglas activas se fijan al construir el
+ * motor; dentro del ciclo son constantes, por lo que el JIT las especializa y el cuerpo queda
+ * libre de saltos por regla.
+ * </p>
+ *
+ * <h2>Equivalencia</h2>
+ * <ul>
+ *   <li>Montos en centavos ({@code long}); el resultado de la cadena equivale a
+ *       {@code Math.round(calcular(p) * 100)}.</li>
+ *   <li>Todo es entero: costos y recargos en pesos enteros son exactos en centavos, y el
+ *       descuento se aplica en puntos básicos con {@link DescuentoPremium#descontar}, la misma
+ *       función que usa la cadena (mitad del centavo hacia arriba: 12,5 % de $1 son 88
+ *       centavos). El resultado no depende del redondeo de {@code double}.</li>
+ *   <li>Los porcentajes se llevan a puntos básicos ({@link DescuentoPremium#puntosBasicos});
+ *       fracciones más finas (p. ej., un tercio) se redondean igual en el motor y en la
+ *       cadena.</li>
+ *   <li>El domingo se obtiene del día de época: {@code floorMod(dia + 3, 7) == 6}
+ *       (el día 0, 1970-01-01, fue jueves).</li>
+ * </ul>
+ */
+public final class MotorMultasColumnar {
+
+    private final boolean exencionFeriado;
+    private final boolean descuentoPremium;
+    private final boolean sobrecargoAltaDemanda;
+    private final long costoPorDiaCentavos;
+    private final int puntosDescuento;
+    private final int umbralDias;
+    private final long recargoFijoCentavos;
+
+    /** Motor con los parámetros por defecto de los decoradores ($100/día, 20%, 3 días, $200). */
+    public MotorMultasColumnar(ReglasMulta r) {
+        this(r, 100, 0.20, 3, 200);
+    }
+
+    public MotorMultasColumnar(ReglasMulta r, int costoPorDia, double porcentajeDescuento,
+                               int umbralDias, int recargoFijo) {
+        this.exencionFeriado = r.exencionFeriado();
+        this.descuentoPremium = r.descuentoPremium();
+        this.sobrecargoAltaDemanda = r.sobrecargoAltaDemanda();
+        this.costoPorDiaCentavos = costoPorDia * 100L;
+        this.puntosDescuento = DescuentoPremium.puntosBasicos(porcentajeDescuento);
+        this.umbralDias = umbralDias;
+        this.recargoFijoCentavos = recargoFijo * 100L;
+    }
+
+    /**
+     * Calcula la multa final de cada préstamo.
+     *
+     * @param c      préstamos en columnas.
+     * @param salida arreglo de al menos {@code c.tamano()} posiciones que recibe la multa de
+     *               cada préstamo en centavos; puede ser {@code null} si sólo interesa el total.
+     * @return suma de las multas en centavos.
+     */
+    public long calcular(ColumnasPrestamos c, long[] salida) {
+        final int n = c.tamano();
+        final int[] vence = c.vencimiento();
+        final int[] devuelto = c.devolucion();
+        final boolean[] premium = c.premium();
+
+        final boolean exencion = exencionFeriado;
+        final boolean descuento = descuentoPremium;
+        final boolean sobrecargo = sobrecargoAltaDemanda;
+        final long costo = costoPorDiaCentavos;
+        final int puntos = puntosDescuento;
+        final int umbral = umbralDias;
+        final long recargo = recargoFijoCentavos;
+
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            int v = vence[i];
+            int d = devuelto[i];
+            boolean conFechas = v != ColumnasPrestamos.SIN_FECHA && d != ColumnasPrestamos.SIN_FECHA;
+            long dias = conFechas ? Math.max(0, (long) d - v) : 0;
+
+            long monto = d == ColumnasPrestamos.SIN_FECHA ? 0 : dias * costo;
+            if (exencion && v != ColumnasPrestamos.SIN_FECHA && Math.floorMod(v + 3, 7) == 6) monto = 0;
+            if (descuento && premium[i]) monto = DescuentoPremium.descontar(monto, puntos);
+            if (sobrecargo && dias > umbral) monto += recargo;
+
+            if (salida != null) salida[i] = monto;
+            total += monto;
+        }
+        return total;
+    }
+}
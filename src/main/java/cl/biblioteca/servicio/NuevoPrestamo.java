@@ -0,0 +1,17 @@
+package cl.biblioteca.servicio;
+
+import java.time.LocalDate;
+
+/**
+ * Datos de un préstamo a crear en lote ({@link ServicioPrestamos#prestarLote}).
+ *
+ * @param socioId          socio que realiza el préstamo.
+ * @param idMaterial       identificador del material dentro de la tabla de su tipo.
+ * @param tipoMaterial     tipo lógico del material ({@code Libro}, {@code Revista}, {@code Video}).
+ * @param fechaInicio      inicio del préstamo.
+ * @param fechaVencimiento fecha límite de devolución.
+ * @param fechaDevolucion  devolución efectiva, o {@code null} si sigue abierto (p. ej., préstamos migrados).
+ */
+public record NuevoPrestamo(long socioId, long idMaterial, String tipoMaterial,
+                            LocalDate fechaInicio, LocalDate fechaVencimiento, LocalDate fechaDevolucion) {
+}
@@ -0,0 +1,13 @@
+package cl.biblioteca.servicio;
+
+import java.util.List;
+
+/**
+ * Página del inventario resumido obtenida con paginación por clave (<em>keyset</em>).
+ *
+ * @param items filas de la página con las claves {@code type}, {@code title}, {@code meta}.
+ * @param next  cursor opaco {@code "<tipo>,<id>"} para pedir la página siguiente vía
+ *              {@code ?after=}, o {@code null} si no quedan más filas.
+ */
+public record PaginaInventario(List<FilaInventario> items, String next) {
+}
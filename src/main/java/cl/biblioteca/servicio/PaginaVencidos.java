@@ -0,0 +1,13 @@
+package cl.biblioteca.servicio;
+
+import java.util.List;
+
+/**
+ * Página de préstamos vencidos obtenida con paginación por clave (<em>keyset</em>).
+ *
+ * @param items préstamos de la página, por vencimiento y luego por id.
+ * @param next  cursor opaco {@code "<AAAA-MM-DD>,<id>"} para pedir la página siguiente vía
+ *              {@code ?after=}, o {@code null} si no quedan más filas.
+ */
+public record PaginaVencidos(List<PrestamoVencido> items, String next) {
+}
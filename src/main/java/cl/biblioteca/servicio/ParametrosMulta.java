@@ -0,0 +1,46 @@
+package cl.biblioteca.servicio;
+
+import java.util.Properties;
+
+/**
+ * Parámetros numéricos de las reglas de multa.
+ *
+ * @param costoPorDia         pesos por día de atraso ({@code MultaBase}).
+ * @param porcentajeDescuento fracción descontada a socios premium, en {@code [0, 1]}; se aplica con precisión de
+ *                            puntos básicos ({@code DescuentoPremium}).
+ * @param umbralDias          atraso a partir del cual (estrictamente mayor) aplica el recargo ({@code SobrecargoAltaDemanda}).
+ * @param recargoFijo         recargo en pesos ({@code SobrecargoAltaDemanda}).
+ */
+public record ParametrosMulta(int costoPorDia, double porcentajeDescuento, int umbralDias, int recargoFijo) {
+
+    /** Valores del sistema legado: $100/día, 20%, 3 días, $200. */
+    public static final ParametrosMulta POR_DEFECTO = new ParametrosMulta(100, 0.20, 3, 200);
+
+    /** @throws IllegalArgumentException si algún valor está fuera de rango. */
+    public ParametrosMulta {
+        if (costoPorDia < 0 || umbralDias < 0 || recargoFijo < 0) {
+            throw new IllegalArgumentException("Los parámetros de multa no pueden ser negativos");
+        }
+        if (!(porcentajeDescuento >= 0.0 && porcentajeDescuento <= 1.0)) {
+            throw new IllegalArgumentException("porcentajeDescuento debe estar entre 0 y 1");
+        }
+    }
+
+    /**
+     * Lee los parámetros desde {@code props}; las claves ausentes toman el valor de
+     * {@link #POR_DEFECTO}. Una propiedad de sistema con la misma clave tiene prioridad.
+     *
+     * @throws IllegalArgumentException si un valor no es numérico o está fuera de rango.
+     */
+    public static ParametrosMulta desde(Properties props) {
+        return new ParametrosMulta(
+                Integer.parseInt(valor(props, "multa.costoPorDia", POR_DEFECTO.costoPorDia())),
+                Double.parseDouble(valor(props, "multa.descuentoPremium.porcentaje", POR_DEFECTO.porcentajeDescuento())),
+                Integer.parseInt(valor(props, "multa.altaDemanda.umbralDias", POR_DEFECTO.umbralDias())),
+                Integer.parseInt(valor(props, "multa.altaDemanda.recargoFijo", POR_DEFECTO.recargoFijo())));
+    }
+
+    private static String valor(Properties props, String clave, Object porDefecto) {
+        return System.getProperty(clave, props.getProperty(clave, String.valueOf(porDefecto))).trim();
+    }
+}
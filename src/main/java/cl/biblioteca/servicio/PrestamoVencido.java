@@ -0,0 +1,15 @@
+package cl.biblioteca.servicio;
+
+/**
+ * Préstamo abierto cuya fecha de vencimiento ya pasó.
+ *
+ * @param prestamoId       id del préstamo.
+ * @param socioId          socio que lo tiene.
+ * @param tipoMaterial     tipo lógico del material.
+ * @param idMaterial       id del material dentro de su tipo.
+ * @param fechaVencimiento vencimiento ({@code AAAA-MM-DD}).
+ * @param diasAtraso       días transcurridos desde el vencimiento hasta la fecha de corte.
+ */
+public record PrestamoVencido(long prestamoId, long socioId, String tipoMaterial, long idMaterial,
+                              String fechaVencimiento, long diasAtraso) {
+}
@@ -0,0 +1,88 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.servicio.decorator.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Registro de cadenas de multa <strong>preconstruidas</strong>, una por combinación de reglas.
+ *
+ * <p>
+ * Los decoradores son inmutables y sin estado por préstamo, por lo que una misma cadena puede
+ * compartirse entre todos los hilos. El camino de cada solicitud se reduce a indexar un
+ * arreglo con {@link ReglasMulta#indice()} y evaluar la cadena; no se asignan decoradores.
+ * </p>
+ *
+ * <h2>Configuración</h2>
+ * <ul>
+ *   <li>Al cargar la clase se leen los parámetros de {@code multas.properties} (classpath),
+ *       con prioridad para propiedades de sistema de igual nombre.</li>
+ *   <li>{@link #actualizar(ParametrosMulta)} reconstruye todas las cadenas con nuevos parámetros
+ *       y las publica de una vez (referencia {@code volatile}): cada solicitud ve el juego
+ *       anterior o el nuevo completo, nunca una mezcla, y sin reiniciar la aplicación.</li>
+ *   <li>El registro también entrega el {@link MotorMultasColumnar} equivalente a cada cadena,
+ *       con los mismos parámetros.</li>
+ * </ul>
+ */
+public final class RegistroCadenasMulta {
+
+    /** Juego inmutable de cadenas y motores para unos parámetros dados. */
+    private record Juego(ParametrosMulta parametros, CalculadoraDeMulta[] cadenas, MotorMultasColumnar[] motores) { }
+
+    private static volatile Juego actual = construir(cargarConfiguracion());
+
+    private RegistroCadenasMulta() { }
+
+    /** @return cadena compartida para la combinación {@code r}. */
+    public static CalculadoraDeMulta cadena(ReglasMulta r) {
+        return actual.cadenas()[r.indice()];
+    }
+
+    /** @return motor columnar equivalente a {@link #cadena(ReglasMulta)}. */
+    public static MotorMultasColumnar motor(ReglasMulta r) {
+        return actual.motores()[r.indice()];
+    }
+
+    /** @return parámetros vigentes. */
+    public static ParametrosMulta parametros() {
+        return actual.parametros();
+    }
+
+    /** Reemplaza en caliente los parámetros de todas las reglas. */
+    public static void actualizar(ParametrosMulta p) {
+        actual = construir(p);
+    }
+
+    private static Juego construir(ParametrosMulta p) {
+        int n = 1 << ReglasMulta.CANTIDAD;
+        CalculadoraDeMulta[] cadenas = new CalculadoraDeMulta[n];
+        MotorMultasColumnar[] motores = new MotorMultasColumnar[n];
+        for (int i = 0; i < n; i++) {
+            ReglasMulta r = ReglasMulta.desdeIndice(i);
+
+            // Orden legado: Base -> Exención -> Descuento -> Sobrecargo
+            CalculadoraDeMulta c = new MultaBase(p.costoPorDia());
+            if (r.exencionFeriado())       c = new ExencionFeriado(c);
+            if (r.descuentoPremium())      c = new DescuentoPremium(c, p.porcentajeDescuento());
+            if (r.sobrecargoAltaDemanda()) c = new SobrecargoAltaDemanda(c, p.umbralDias(), p.recargoFijo());
+            cadenas[i] = c;
+
+            motores[i] = new MotorMultasColumnar(r, p.costoPorDia(), p.porcentajeDescuento(),
+                    p.umbralDias(), p.recargoFijo());
+        }
+        return new Juego(p, cadenas, motores);
+    }
+
+    private static ParametrosMulta cargarConfiguracion() {
+        Properties props = new Properties();
+        try (InputStream in = RegistroCadenasMulta.class.getClassLoader().getResourceAsStream("multas.properties")) {
+            if (in != null) props.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ParametrosMulta.desde(props);
+    }
+}
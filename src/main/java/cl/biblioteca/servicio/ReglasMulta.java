@@ -0,0 +1,25 @@
+package cl.biblioteca.servicio;
+
+/**
+ * Combinación de reglas de multa activas sobre la base de $100 por día de atraso.
+ * El orden de aplicación es fijo (legado): Base &rarr; Exención &rarr; Descuento &rarr; Sobrecargo.
+ *
+ * @param exencionFeriado       multa 0 si el vencimiento cae en domingo.
+ * @param descuentoPremium      20% de descuento para socios premium.
+ * @param sobrecargoAltaDemanda recargo fijo si el atraso supera el umbral.
+ */
+public record ReglasMulta(boolean exencionFeriado, boolean descuentoPremium, boolean sobrecargoAltaDemanda) {
+
+    /** Cantidad de reglas combinables; una regla nueva agrega un bit a {@link #indice()}. */
+    public static final int CANTIDAD = 3;
+
+    /** @return índice único de la combinación en {@code [0, 2^CANTIDAD)} (un bit por regla). */
+    public int indice() {
+        return (exencionFeriado ? 1 : 0) | (descuentoPremium ? 2 : 0) | (sobrecargoAltaDemanda ? 4 : 0);
+    }
+
+    /** Inversa de {@link #indice()}. */
+    public static ReglasMulta desdeIndice(int i) {
+        return new ReglasMulta((i & 1) != 0, (i & 2) != 0, (i & 4) != 0);
+    }
+}
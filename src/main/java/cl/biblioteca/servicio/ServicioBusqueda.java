@@ -0,0 +1,163 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+
+import java.util.*;
+
+/**
+ * Búsqueda de texto completo sobre el catálogo ({@code titulo} y {@code autorOEditor} de
+ * {@code Libro}, {@code Revista} y {@code Video}).
+ *
+ * <p>
+ * Se apoya en una tabla virtual <strong>FTS5</strong> de SQLite ({@code catalogo_fts}) con
+ * índice de prefijos, de modo que una búsqueda cuesta una consulta al índice invertido y no un
+ * recorrido del catálogo.
+ * </p>
+ *
+ * <h2>Sincronización</h2>
+ * <ul>
+ *   <li>Triggers {@code AFTER INSERT/UPDATE/DELETE} sobre cada tabla de materiales mantienen
+ *       el índice al día para cualquier ruta de escritura (semilla, préstamos, importaciones).</li>
+ *   <li>El {@code rowid} de cada entrada codifica el material: {@code id * 4 + tipo}
+ *       (0 = Libro, 1 = Revista, 2 = Video), por lo que actualizar o borrar una entrada es
+ *       una búsqueda por clave.</li>
+ *   <li>{@link #prepararIndice()} crea tabla y triggers si faltan. Si faltaba algún trigger
+ *       (esquema recién creado, o una tabla recreada, que borra sus triggers) reconstruye el
+ *       índice completo, aunque la cantidad de filas coincida: lo escrito sin triggers
+ *       ({@code seed.sql}, cambios mientras no existían) no llegó al índice. Con los triggers
+ *       ya presentes, lo reconstruye sólo si su cantidad de filas no coincide con la del
+ *       catálogo.</li>
+ * </ul>
+ *
+ * <h2>Consultas</h2>
+ * <p>Cada palabra del texto buscado se convierte en un término con prefijo ({@code "pal"*});
+ * todas deben aparecer. El resultado se ordena por relevancia BM25, ponderando el título
+ * el doble que el autor/editor.</p>
+ */
+public class ServicioBusqueda {
+
+    /** Máximo de resultados por búsqueda. */
+    public static final int LIMITE_MAXIMO = 100;
+
+    /** Cantidad de resultados cuando el cliente no indica {@code limit}. */
+    public static final int LIMITE_POR_DEFECTO = 20;
+
+    /** Tablas indexadas, en el orden que define su código en el {@code rowid}. */
+    private static final List<String> TABLAS = List.of("Libro", "Revista", "Video");
+
+    /**
+     * Crea (si no existen) la tabla FTS5 y los triggers de sincronización, y reconstruye el
+     * índice si faltaba algún trigger o si está desfasado respecto del catálogo. Debe invocarse
+     * al arrancar la aplicación, después de crear el esquema.
+     */
+    public static void prepararIndice() {
+        EntityManager em = JpaUtil.em();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            StringJoiner nombres = new StringJoiner("', '", "'", "'");
+            for (String t : TABLAS) nombres.add(t + "_fts_ai").add(t + "_fts_au").add(t + "_fts_ad");
+            long triggers = ((Number) em.createNativeQuery(
+                    "select count(*) from sqlite_master where type = 'trigger' and name in (" + nombres + ")")
+                    .getSingleResult()).longValue();
+            em.createNativeQuery("""
+                    create virtual table if not exists catalogo_fts using fts5(
+                        titulo, autorOEditor, tipo unindexed,
+                        tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')
+                    """).executeUpdate();
+
+            for (int i = 0; i < TABLAS.size(); i++) {
+                String t = TABLAS.get(i);
+                String rowid = "%s.id * 4 + " + i;
+                em.createNativeQuery("create trigger if not exists " + t + "_fts_ai after insert on " + t
+                        + " begin insert into catalogo_fts(rowid, titulo, autorOEditor, tipo)"
+                        + " values (" + rowid.formatted("new") + ", new.titulo, new.autorOEditor, '" + t + "'); end")
+                        .executeUpdate();
+                em.createNativeQuery("create trigger if not exists " + t + "_fts_au after update on " + t
+                        + " begin delete from catalogo_fts where rowid = " + rowid.formatted("old") + ";"
+                        + " insert into catalogo_fts(rowid, titulo, autorOEditor, tipo)"
+                        + " values (" + rowid.formatted("new") + ", new.titulo, new.autorOEditor, '" + t + "'); end")
+                        .executeUpdate();
+                em.createNativeQuery("create trigger if not exists " + t + "_fts_ad after delete on " + t
+                        + " begin delete from catalogo_fts where rowid = " + rowid.formatted("old") + "; end")
+                        .executeUpdate();
+            }
+
+            long indexadas = ((Number) em.createNativeQuery("select count(*) from catalogo_fts")
+                    .getSingleResult()).longValue();
+            long catalogo = em.createQuery("select count(c) from MaterialCatalogo c", Long.class)
+                    .getSingleResult();
+            if (triggers < 3L * TABLAS.size() || indexadas != catalogo) {
+                em.createNativeQuery("delete from catalogo_fts").executeUpdate();
+                for (int i = 0; i < TABLAS.size(); i++) {
+                    String t = TABLAS.get(i);
+                    em.createNativeQuery("insert into catalogo_fts(rowid, titulo, autorOEditor, tipo)"
+                            + " select id * 4 + " + i + ", titulo, autorOEditor, '" + t + "' from " + t)
+                            .executeUpdate();
+                }
+            }
+            tx.commit();
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Busca materiales cuyo título o autor/editor contenga todas las palabras de {@code q}
+     * (como palabra completa o prefijo).
+     *
+     * @param q      texto buscado; se ignoran signos de puntuación.
+     * @param limite cantidad máxima de resultados; se acota al rango {@code [1, LIMITE_MAXIMO]}.
+     * @return filas con {@code type}, {@code id}, {@code title}, {@code author} y {@code score}
+     *         (mayor es más relevante); vacía si {@code q} no contiene palabras.
+     */
+    public List<Map<String,Object>> buscar(String q, int limite) {
+        String consulta = consultaFts(q);
+        if (consulta.isEmpty()) return List.of();
+        int lim = Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        EntityManager em = JpaUtil.emLectura();
+        try {
+            @SuppressWarnings("unchecked")
+            List<Object[]> filas = em.createNativeQuery("""
+                    select tipo, rowid / 4, titulo, autorOEditor, bm25(catalogo_fts, 2.0, 1.0) as rango
+                    from catalogo_fts
+                    where catalogo_fts match ?1
+                    order by rango
+                    limit ?2
+                    """).setParameter(1, consulta).setParameter(2, lim).getResultList();
+
+            List<Map<String,Object>> out = new ArrayList<>(filas.size());
+            for (Object[] f : filas) {
+                Map<String,Object> row = new LinkedHashMap<>();
+                row.put("type",   f[0]);
+                row.put("id",     ((Number) f[1]).longValue());
+                row.put("title",  f[2]);
+                row.put("author", f[3]);
+                row.put("score",  -((Number) f[4]).doubleValue());
+                out.add(row);
+            }
+            return out;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Traduce el texto del usuario a la sintaxis de FTS5: cada palabra como término entre
+     * comillas con prefijo. Así ningún carácter del usuario se interpreta como operador.
+     */
+    static String consultaFts(String q) {
+        if (q == null) return "";
+        StringJoiner sj = new StringJoiner(" ");
+        for (String palabra : q.split("[^\\p{L}\\p{N}]+")) {
+            if (!palabra.isEmpty()) sj.add("\"" + palabra + "\"*");
+        }
+        return sj.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.dominio.Prestamo;
+import cl.biblioteca.persistencia.JpaUtil;
+import cl.biblioteca.servicio.decorator.*;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.persistence.EntityManager;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Servicio de cálculo de <strong>multas en lote</strong>.
+ *
+ * <p>
+ * Aplica la cadena de decoradores {@link CalculadoraDeMulta} a muchos préstamos en una sola
+ * solicitud y transmite el desglose de cada uno a medida que se calcula, en lugar de una
+ * llamada HTTP, un {@code EntityManager} y un {@code em.find} por préstamo. Cada préstamo se
+ * evalúa en una sola pasada ({@link CalculadoraDeMulta#evaluar}).
+ * </p>
+ *
+ * <h2>Carga de datos</h2>
+ * <ul>
+ *   <li>Por lista de ids: consultas {@code IN} en bloques de {@value #TAMANO_BLOQUE} ids con
+ *       {@code join fetch} del {@code Socio} (una consulta por bloque, sin N+1).</li>
+ *   <li>Por rango de devolución: un único cursor de solo avance sobre los préstamos devueltos
+ *       entre dos fechas, también con el socio incluido.</li>
+ *   <li>Ambos modos usan una {@link StatelessSession}: la memoria no crece con el tamaño del lote.</li>
+ * </ul>
+ *
+ * <h2>Salida</h2>
+ * <pre>{@code
+ * {"reglas": {...},
+ *  "multas": [{"prestamoId": 1, "diasAtraso": 2, "desglose": {...}, "monto": 200.0}, ...],
+ *  "noEncontrados": [99],
+ *  "cantidad": 1, "montoTotal": 200.0}
+ * }</pre>
+ */
+public class ServicioMultas {
+
+    /** Ids por consulta {@code IN}; muy por debajo del límite de variables de SQLite. */
+    public static final int TAMANO_BLOQUE = 500;
+
+    /** Máximo de ids aceptados en una solicitud por lista. */
+    public static final int MAXIMO_IDS = 100_000;
+
+    /**
+     * Cadena de decoradores en el orden legado:
+     * Base &rarr; Exención &rarr; Descuento &rarr; Sobrecargo (omitiendo las reglas inactivas).
+     * Es la instancia compartida de {@link RegistroCadenasMulta}, con los parámetros vigentes.
+     */
+    public static CalculadoraDeMulta cadena(ReglasMulta r) {
+        return RegistroCadenasMulta.cadena(r);
+    }
+
+    /**
+     * Carga un préstamo junto con su socio (necesario para el descuento premium) en una sola
+     * consulta, con el grafo {@link Prestamo#GRAFO_CON_SOCIO}, haya o no socios en la caché de
+     * segundo nivel.
+     *
+     * @param id id del préstamo.
+     * @return el préstamo con su socio inicializado, o {@code null} si no existe.
+     */
+    public static Prestamo prestamoConSocio(long id) {
+        EntityManager em = JpaUtil.emLectura();
+        try {
+            return em.find(Prestamo.class, id,
+                    Map.of("jakarta.persistence.fetchgraph", em.getEntityGraph(Prestamo.GRAFO_CON_SOCIO)));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Montos del desglose legado a partir de una evaluación de la cadena: una capa inactiva
+     * repite el monto de la anterior.
+     *
+     * @return {@code [base, despuesExencion, despuesDescuento, final]}.
+     */
+    public static double[] desgloseLegado(DesgloseMulta d) {
+        double base = d.montoTras(MultaBase.CAPA, 0.0);
+        double exencion = d.montoTras(ExencionFeriado.CAPA, base);
+        double descuento = d.montoTras(DescuentoPremium.CAPA, exencion);
+        return new double[] { base, exencion, descuento, d.monto() };
+    }
+
+    /**
+     * Calcula y escribe las multas de los préstamos indicados.
+     *
+     * @param ids   ids de préstamo; los inexistentes se informan en {@code noEncontrados}.
+     * @param r     reglas activas.
+     * @param out   flujo de salida (no se cierra).
+     * @throws IllegalArgumentException si se piden más de {@value #MAXIMO_IDS} ids.
+     */
+    public void escribirLote(List<Long> ids, ReglasMulta r, OutputStream out) {
+        if (ids.size() > MAXIMO_IDS) {
+            throw new IllegalArgumentException("Máximo " + MAXIMO_IDS + " préstamos por solicitud");
+        }
+        CalculadoraDeMulta cadena = cadena(r);
+        List<Long> unicos = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Long> noEncontrados = new ArrayList<>();
+
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            Salida s = new Salida(out, r);
+            for (int i = 0; i < unicos.size(); i += TAMANO_BLOQUE) {
+                List<Long> bloque = unicos.subList(i, Math.min(unicos.size(), i + TAMANO_BLOQUE));
+                List<Prestamo> prestamos = ss
+                        .createSelectionQuery("from Prestamo p join fetch p.socio where p.id in :ids order by p.id",
+                                Prestamo.class)
+                        .setParameter("ids", bloque)
+                        .getResultList();
+
+                Set<Long> vistos = new HashSet<>();
+                for (Prestamo p : prestamos) {
+                    s.escribir(p, cadena);
+                    vistos.add(p.obtenerId());
+                }
+                for (Long id : bloque) {
+                    if (!vistos.contains(id)) noEncontrados.add(id);
+                }
+            }
+            s.terminar(noEncontrados);
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Calcula y escribe las multas de todos los préstamos devueltos en {@code [desde, hasta]}.
+     *
+     * @param desde primera fecha de devolución incluida.
+     * @param hasta última fecha de devolución incluida.
+     * @param r     reglas activas.
+     * @param out   flujo de salida (no se cierra).
+     */
+    public void escribirLotePorDevolucion(LocalDate desde, LocalDate hasta, ReglasMulta r, OutputStream out) {
+        CalculadoraDeMulta cadena = cadena(r);
+
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try (ScrollableResults<Prestamo> prestamos = ss
+                .createSelectionQuery("from Prestamo p join fetch p.socio"
+                        + " where p.fechaDevolucion between :desde and :hasta order by p.id", Prestamo.class)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .setFetchSize(TAMANO_BLOQUE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            Salida s = new Salida(out, r);
+            while (prestamos.next()) {
+                s.escribir(prestamos.get(), cadena);
+            }
+            s.terminar(List.of());
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Totaliza las multas de los préstamos devueltos en {@code [desde, hasta]} con el motor
+     * columnar ({@link MotorMultasColumnar}), sin desglose por préstamo. Pensado para corridas
+     * de facturación sobre millones de préstamos.
+     *
+     * @return mapa con {@code reglas}, {@code cantidad} y {@code montoTotal}.
+     */
+    public Map<String,Object> totalizarPorDevolucion(LocalDate desde, LocalDate hasta, ReglasMulta r) {
+        ColumnasPrestamos c = ColumnasPrestamos.cargar(desde, hasta);
+        long centavos = RegistroCadenasMulta.motor(r).calcular(c, null);
+
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("reglas", Map.of(
+                "exencionFeriado", r.exencionFeriado(),
+                "descuentoPremium", r.descuentoPremium(),
+                "sobrecargoAltaDemanda", r.sobrecargoAltaDemanda()));
+        out.put("cantidad", c.tamano());
+        out.put("montoTotal", centavos / 100.0);
+        return out;
+    }
+
+    /** Escritura incremental del documento de respuesta. */
+    private static final class Salida {
+        private final JsonGenerator g;
+        private long cantidad;
+        private double montoTotal;
+
+        Salida(OutputStream out, ReglasMulta r) {
+            g = Json.createGenerator(out);
+            g.writeStartObject()
+                    .writeStartObject("reglas")
+                    .write("exencionFeriado", r.exencionFeriado())
+                    .write("descuentoPremium", r.descuentoPremium())
+                    .write("sobrecargoAltaDemanda", r.sobrecargoAltaDemanda())
+                    .writeEnd()
+                    .writeStartArray("multas");
+        }
+
+        void escribir(Prestamo p, CalculadoraDeMulta cadena) {
+            DesgloseMulta d = cadena.evaluar(p);
+            double[] m = desgloseLegado(d);
+
+            g.writeStartObject()
+                    .write("prestamoId", p.obtenerId())
+                    .write("diasAtraso", d.diasAtraso())
+                    .writeStartObject("desglose")
+                    .write("base", m[0])
+                    .write("despuesExencion", m[1])
+                    .write("despuesDescuento", m[2])
+                    .write("final", m[3])
+                    .writeEnd()
+                    .write("monto", m[3])
+                    .writeEnd();
+
+            cantidad++;
+            montoTotal += m[3];
+            if (cantidad % TAMANO_BLOQUE == 0) g.flush();
+        }
+
+        void terminar(List<Long> noEncontrados) {
+            g.writeEnd();
+            g.writeStartArray("noEncontrados");
+            for (Long id : noEncontrados) g.write(id);
+            g.writeEnd()
+                    .write("cantidad", cantidad)
+                    .write("montoTotal", montoTotal)
+                    .writeEnd();
+            g.flush();
+        }
+    }
+}
@@ -4,7 +4,15 @@ import cl.biblioteca.dominio.*;
 import cl.biblioteca.persistencia.JpaUtil;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.RollbackException;
+import org.hibernate.StatelessSession;
+
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Servicio de aplicación para gestionar operaciones de <strong>préstamo</strong>.
@@ -20,20 +28,42 @@ import java.time.LocalDate;
  * <ul>
  *   <li>Crear préstamos con fechas de inicio y vencimiento calculadas desde la fecha actual.</li>
  *   <li>Persistir el préstamo y devolver la entidad administrada al llamador.</li>
+ *   <li>Registrar devoluciones y renovaciones con bloqueo optimista ({@link #devolver},
+ *       {@link #renovar}).</li>
+ *   <li>Listar préstamos vencidos con paginación por clave ({@link #vencidos}).</li>
+ *   <li>Crear muchos préstamos en una sola transacción ({@link #prestarLote}), con inserciones
+ *       agrupadas en lotes JDBC ({@code hibernate.jdbc.batch_size}), para reservas de inicio de
+ *       semestre y migraciones desde el sistema anterior.</li>
  * </ul>
  *
  * <h2>Consideraciones</h2>
  * <ul>
  *   <li>El método establece <em>solo</em> una referencia polimórfica al material
- *       vía {@code idMaterial}/{@code tipoMaterial}; no valida existencia ni disponibilidad.</li>
+ *       vía {@code idMaterial}/{@code tipoMaterial}; no valida su existencia. La disponibilidad
+ *       se reserva atómicamente en {@link IndiceDisponibilidad}: un material con un préstamo
+ *       abierto no puede prestarse de nuevo.</li>
  *   <li>El orden y la duración del préstamo se calculan con {@link LocalDate}, sin componente horario.</li>
  *   <li>En caso de excepción, la transacción se revierte (rollback) y el {@link EntityManager} se cierra siempre.</li>
+ *   <li>Tras cada confirmación se incrementa la versión de {@link CacheReportes} y se invalida
+ *       el resumen de los socios afectados en {@link CacheSocios}.</li>
  * </ul>
  *
  * @since 1.0.0
  */
 public class ServicioPrestamos {
 
+    /** Inserciones por lote JDBC; coincide con {@code hibernate.jdbc.batch_size}. */
+    public static final int TAMANO_LOTE_JDBC = 50;
+
+    /** Máximo de préstamos aceptados por {@link #prestarLote}. */
+    public static final int MAXIMO_LOTE = 100_000;
+
+    /** Cantidad de préstamos vencidos por página cuando el cliente no indica {@code limit}. */
+    public static final int LIMITE_POR_DEFECTO = 100;
+
+    /** Máximo de préstamos vencidos por página. */
+    public static final int LIMITE_MAXIMO = 1000;
+
     /**
      * Crea y persiste un nuevo {@link Prestamo}.
      *
@@ -51,9 +81,11 @@ public class ServicioPrestamos {
      * @param tipoMaterial tipo lógico del material (por ejemplo, {@code "Libro"}, {@code "Revista"}, {@code "Video"}).
      * @param dias         cantidad de días del préstamo; se suma a la fecha actual para calcular el vencimiento.
      * @return el {@link Prestamo} persistido.
+     * @throws IllegalStateException si el material ya está prestado ({@link IndiceDisponibilidad}).
      * @throws RuntimeException si ocurre algún error de persistencia; la transacción se revierte.
      */
     public Prestamo prestar(Socio socio, Long idMaterial, String tipoMaterial, int dias) {
+        IndiceDisponibilidad.reservar(tipoMaterial, idMaterial);
         EntityManager em = JpaUtil.em();
         EntityTransaction tx = em.getTransaction();
         try {
@@ -68,7 +100,174 @@ public class ServicioPrestamos {
 
             em.persist(p);
             tx.commit();
+            CacheReportes.registrarCambio();
+            CacheSocios.invalidar(socio.obtenerId());
+            IndiceDisponibilidad.confirmar(tipoMaterial, idMaterial, p.obtenerId());
+            return p;
+        } catch (Exception e) {
+            if (tx.isActive()) tx.rollback();
+            IndiceDisponibilidad.liberar(tipoMaterial, idMaterial, IndiceDisponibilidad.RESERVADO);
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Crea y persiste muchos préstamos en <strong>una</strong> transacción.
+     *
+     * <p>Como los ids de {@link Prestamo} se asignan antes del {@code INSERT}, Hibernate
+     * agrupa las inserciones en lotes JDBC de {@value #TAMANO_LOTE_JDBC}. El contexto de persistencia
+     * se vacía tras cada lote, por lo que la memoria no crece con el tamaño de la solicitud. Los
+     * socios se validan con consultas {@code IN} por bloques, no uno a uno.</p>
+     *
+     * @param nuevos préstamos a crear (a lo más {@value #MAXIMO_LOTE}).
+     * @return ids asignados, en el mismo orden de {@code nuevos}.
+     * @throws IllegalArgumentException si el lote excede el máximo, un tipo de material no existe o
+     *                                  un socio no existe; en ese caso no se crea ningún préstamo.
+     * @throws IllegalStateException    si un préstamo abierto pide un material ya prestado
+     *                                  ({@link IndiceDisponibilidad}); tampoco se crea ninguno.
+     */
+    public List<Long> prestarLote(List<NuevoPrestamo> nuevos) {
+        if (nuevos.size() > MAXIMO_LOTE) {
+            throw new IllegalArgumentException("Máximo " + MAXIMO_LOTE + " préstamos por solicitud");
+        }
+        Set<Long> socios = new HashSet<>();
+        for (NuevoPrestamo n : nuevos) {
+            if (!ServicioReportes.TIPOS.contains(n.tipoMaterial())) {
+                throw new IllegalArgumentException("Tipo de material desconocido: " + n.tipoMaterial());
+            }
+            socios.add(n.socioId());
+        }
+
+        // Los préstamos abiertos reservan su material antes de la transacción
+        int reservados = 0;
+        EntityManager em = null;
+        EntityTransaction tx = null;
+        try {
+            for (NuevoPrestamo n : nuevos) {
+                if (n.fechaDevolucion() != null) continue;
+                IndiceDisponibilidad.reservar(n.tipoMaterial(), n.idMaterial());
+                reservados++;
+            }
+
+            em = JpaUtil.em();
+            tx = em.getTransaction();
+            tx.begin();
+            validarSocios(em, socios);
+
+            List<Long> ids = new ArrayList<>(nuevos.size());
+            for (int i = 0; i < nuevos.size(); i++) {
+                NuevoPrestamo n = nuevos.get(i);
+                Prestamo p = new Prestamo();
+                p.definirSocio(em.getReference(Socio.class, n.socioId()));
+                p.definirIdMaterial(n.idMaterial());
+                p.definirTipoMaterial(n.tipoMaterial());
+                p.definirFechaInicio(n.fechaInicio());
+                p.definirFechaVencimiento(n.fechaVencimiento());
+                p.definirFechaDevolucion(n.fechaDevolucion());
+                em.persist(p);
+                ids.add(p.obtenerId());
+
+                if ((i + 1) % TAMANO_LOTE_JDBC == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            tx.commit();
+            CacheReportes.registrarCambio();
+            for (Long socio : socios) CacheSocios.invalidar(socio);
+
+            for (int i = 0; i < nuevos.size(); i++) {
+                NuevoPrestamo n = nuevos.get(i);
+                if (n.fechaDevolucion() == null) IndiceDisponibilidad.confirmar(n.tipoMaterial(), n.idMaterial(), ids.get(i));
+            }
+            return ids;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            for (NuevoPrestamo n : nuevos) {
+                if (reservados == 0) break;
+                if (n.fechaDevolucion() != null) continue;
+                IndiceDisponibilidad.liberar(n.tipoMaterial(), n.idMaterial(), IndiceDisponibilidad.RESERVADO);
+                reservados--;
+            }
+            throw e;
+        } finally {
+            if (em != null) em.close();
+        }
+    }
+
+    /**
+     * Registra la devolución de un préstamo.
+     *
+     * <p>La actualización lleva la condición {@code version = ?} ({@code @Version}): si otra
+     * devolución o renovación confirmó antes, falla sin haber bloqueado la tabla. Tras el commit
+     * se libera el material en {@link IndiceDisponibilidad}.</p>
+     *
+     * @param prestamoId       préstamo a devolver.
+     * @param fecha            fecha de devolución.
+     * @param versionEsperada  versión leída por el cliente, o {@code null} para no verificarla.
+     * @return el préstamo actualizado, o {@code null} si no existe.
+     * @throws IllegalStateException   si el préstamo ya estaba devuelto.
+     * @throws OptimisticLockException si la versión no coincide o cambió durante la operación.
+     */
+    public Prestamo devolver(long prestamoId, LocalDate fecha, Long versionEsperada) {
+        Prestamo p = actualizar(prestamoId, versionEsperada, prestamo -> {
+            if (prestamo.obtenerFechaDevolucion() != null) {
+                throw new IllegalStateException("Préstamo ya devuelto: " + prestamoId);
+            }
+            prestamo.definirFechaDevolucion(fecha);
+        });
+        if (p != null) IndiceDisponibilidad.liberar(p.obtenerTipoMaterial(), p.obtenerIdMaterial(), p.obtenerId());
+        return p;
+    }
+
+    /**
+     * Extiende el vencimiento de un préstamo abierto, con el mismo bloqueo optimista que
+     * {@link #devolver}.
+     *
+     * @param dias días que se suman al vencimiento actual (positivo).
+     * @return el préstamo actualizado, o {@code null} si no existe.
+     * @throws IllegalArgumentException si {@code dias} no es positivo.
+     * @throws IllegalStateException    si el préstamo ya fue devuelto.
+     * @throws OptimisticLockException  si la versión no coincide o cambió durante la operación.
+     */
+    public Prestamo renovar(long prestamoId, int dias, Long versionEsperada) {
+        if (dias <= 0) throw new IllegalArgumentException("'dias' debe ser positivo");
+        return actualizar(prestamoId, versionEsperada, prestamo -> {
+            if (prestamo.obtenerFechaDevolucion() != null) {
+                throw new IllegalStateException("Préstamo ya devuelto: " + prestamoId);
+            }
+            prestamo.definirFechaVencimiento(prestamo.obtenerFechaVencimiento().plusDays(dias));
+        });
+    }
+
+    /** Lee, verifica la versión, aplica {@code cambio} y confirma; traduce el conflicto de versión. */
+    private static Prestamo actualizar(long prestamoId, Long versionEsperada,
+                                       Consumer<Prestamo> cambio) {
+        EntityManager em = JpaUtil.em();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            Prestamo p = em.find(Prestamo.class, prestamoId);
+            if (p == null) {
+                tx.rollback();
+                return null;
+            }
+            if (versionEsperada != null && versionEsperada != p.obtenerVersion()) {
+                throw new OptimisticLockException("Versión " + versionEsperada + " obsoleta; la actual es "
+                        + p.obtenerVersion());
+            }
+            cambio.accept(p);
+            tx.commit();
+            CacheReportes.registrarCambio();
+            // Id del socio sin inicializar la asociación perezosa
+            CacheSocios.invalidar((Long) em.getEntityManagerFactory().getPersistenceUnitUtil()
+                    .getIdentifier(p.obtenerSocio()));
             return p;
+        } catch (RollbackException e) {
+            if (e.getCause() instanceof OptimisticLockException ole) throw ole;
+            throw e;
         } catch (Exception e) {
             if (tx.isActive()) tx.rollback();
             throw e;
@@ -76,4 +275,106 @@ public class ServicioPrestamos {
             em.close();
         }
     }
+
+    /**
+     * Página de préstamos abiertos vencidos a la fecha {@code hoy}, ordenados por vencimiento y
+     * luego por id.
+     *
+     * <p>La condición {@code fechaDevolucion is null} y el orden coinciden con el índice
+     * {@code (fechaDevolucion, fechaVencimiento, id)}. El cursor se compara como valor de fila,
+     * {@code (fechaVencimiento, id) > (:fecha, :id)}, que SQLite usa como inicio del recorrido
+     * del índice (la forma con {@code or} no lo es y recorre el rango desde el principio): cada
+     * página es un recorrido acotado del índice a partir del cursor, sin importar cuántos
+     * préstamos haya en el historial.</p>
+     *
+     * @param after  cursor {@code "<AAAA-MM-DD>,<id>"} de la página anterior, o {@code null}.
+     * @param limite filas por página; se acota al rango {@code [1, LIMITE_MAXIMO]}.
+     * @param hoy    fecha de corte.
+     * @throws IllegalArgumentException si el cursor es inválido.
+     */
+    public PaginaVencidos vencidos(String after, int limite, LocalDate hoy) {
+        int lim = Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        LocalDate despuesFecha = null;
+        long despuesId = 0;
+        if (after != null && !after.isBlank()) {
+            String[] partes = after.split(",", 2);
+            try {
+                if (partes.length != 2) throw new IllegalArgumentException();
+                despuesFecha = LocalDate.parse(partes[0].trim());
+                despuesId = Long.parseLong(partes[1].trim());
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + after);
+            }
+        }
+
+        String hql = "select p.id, p.socio.id, p.tipoMaterial, p.idMaterial, p.fechaVencimiento from Prestamo p"
+                + " where p.fechaDevolucion is null and p.fechaVencimiento < :hoy";
+        if (despuesFecha != null) {
+            hql += " and (p.fechaVencimiento, p.id) > (:fecha, :id)";
+        }
+
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            var q = ss.createSelectionQuery(hql + " order by p.fechaVencimiento, p.id", Object[].class)
+                    .setParameter("hoy", hoy)
+                    .setMaxResults(lim + 1);
+            if (despuesFecha != null) q.setParameter("fecha", despuesFecha).setParameter("id", despuesId);
+            List<Object[]> filas = q.getResultList();
+
+            List<PrestamoVencido> items = new ArrayList<>(Math.min(filas.size(), lim));
+            for (int i = 0; i < filas.size() && i < lim; i++) {
+                Object[] f = filas.get(i);
+                LocalDate vence = (LocalDate) f[4];
+                items.add(new PrestamoVencido((Long) f[0], (Long) f[1], (String) f[2], (Long) f[3],
+                        vence.toString(), ChronoUnit.DAYS.between(vence, hoy)));
+            }
+            String next = null;
+            if (filas.size() > lim) {
+                PrestamoVencido ultimo = items.get(lim - 1);
+                next = ultimo.fechaVencimiento() + "," + ultimo.prestamoId();
+            }
+            return new PaginaVencidos(items, next);
+        } finally {
+            ss.close();
+        }
+    }
+
+    /** @throws IllegalArgumentException con el primer socio inexistente. */
+    /**
+     * Filtra los socios que existen, con consultas {@code IN} por bloques sobre la conexión de
+     * lectura.
+     *
+     * @return subconjunto de {@code socios} que existe en la base de datos.
+     */
+    public Set<Long> sociosExistentes(Set<Long> socios) {
+        Set<Long> existentes = new HashSet<>();
+        List<Long> pendientes = new ArrayList<>(socios);
+        EntityManager em = JpaUtil.emLectura();
+        try {
+            for (int i = 0; i < pendientes.size(); i += ServicioMultas.TAMANO_BLOQUE) {
+                existentes.addAll(em
+                        .createQuery("select s.id from Socio s where s.id in :ids", Long.class)
+                        .setParameter("ids", pendientes.subList(i, Math.min(pendientes.size(), i + ServicioMultas.TAMANO_BLOQUE)))
+                        .getResultList());
+            }
+            return existentes;
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void validarSocios(EntityManager em, Set<Long> socios) {
+        List<Long> pendientes = new ArrayList<>(socios);
+        for (int i = 0; i < pendientes.size(); i += ServicioMultas.TAMANO_BLOQUE) {
+            List<Long> bloque = pendientes.subList(i, Math.min(pendientes.size(), i + ServicioMultas.TAMANO_BLOQUE));
+            Set<Long> existentes = new HashSet<>(em
+                    .createQuery("select s.id from Socio s where s.id in :ids", Long.class)
+                    .setParameter("ids", bloque)
+                    .getResultList());
+            for (Long id : bloque) {
+                if (!existentes.contains(id)) throw new IllegalArgumentException("Socio no encontrado: " + id);
+            }
+        }
+    }
 }
@@ -2,20 +2,37 @@ package cl.biblioteca.servicio;
 
 import cl.biblioteca.dominio.*;
 import cl.biblioteca.persistencia.JpaUtil;
+import cl.biblioteca.servicio.visitor.VisitanteCombinable;
 import cl.biblioteca.servicio.visitor.VisitanteEstadisticasInventarioJson;
+import cl.biblioteca.servicio.visitor.VisitanteMaterial;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.persistence.EntityManager;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.SelectionQuery;
+
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * Servicio de generación de <strong>reportes de inventario</strong> en formato resumido.
  *
- * <p><strong>Contexto LEGADO:</strong> la implementación construye el reporte
- * consultando explícitamente cada tipo concreto de material
- * ({@link Libro}, {@link Revista}, {@link Video}) y armando filas manualmente.
+ * <p>
+ * El inventario se arma con <strong>proyecciones</strong> de solo lectura (id, título y un
+ * metadato) sobre {@link StatelessSession}s, tabla por tabla en el orden de {@link #TIPOS} y
+ * por rango de la clave primaria de cada una: ninguna consulta del listado recorre ni ordena
+ * el catálogo completo. Las estadísticas se calculan con agregados sobre la vista
+ * {@link MaterialCatalogo} o, para analíticas en memoria, con visitantes en paralelo.
  * </p>
  *
  * <h2>Salida esperada</h2>
- * <p>Una lista de mapas con las columnas:</p>
+ * <p>Una lista de filas con las columnas:</p>
  * <ul>
  *   <li><code>"type"</code>: tipo de material (p. ej., <em>Libro</em>, <em>Revista</em>, <em>Video</em>).</li>
  *   <li><code>"title"</code>: título del material.</li>
@@ -25,12 +42,64 @@ import java.util.*;
  *
  * <h2>Consideraciones</h2>
  * <ul>
- *   <li>El método abre un {@link EntityManager} y lo cierra siempre en el bloque <em>finally</em>.</li>
- *   <li>Actualmente realiza tres consultas separadas (una por tipo), manteniendo la semántica del sistema legado.</li>
+ *   <li>No se hidratan entidades administradas ni se toman instantáneas para
+ *       <em>dirty checking</em>.</li>
+ *   <li>El orden global es {@code (tipo, id)}: se obtiene concatenando las tres tablas, cada
+ *       una con {@code order by id} sobre su clave primaria, sin un orden global en SQL.</li>
+ *   <li>Para catálogos grandes existen dos modos que no materializan el inventario completo:
+ *       {@link #paginaInventario(String, int)} (paginación por clave {@code (tipo, id)}) y
+ *       {@link #escribirInventario(OutputStream)} (transmisión con cursores de solo avance).</li>
+ *   <li>La vista {@link MaterialCatalogo} ({@code UNION ALL}) sólo se usa para agregados, que
+ *       la recorren una vez sin ordenarla.</li>
+ *   <li>El listado completo, las páginas y las estadísticas agregadas se guardan en la caché de
+ *       consultas (región {@value #REGION_CATALOGO}); Hibernate la invalida cuando cambia
+ *       cualquier tabla del catálogo. La transmisión con cursor no pasa por ella.</li>
  * </ul>
  */
 public class ServicioReportes {
 
+    /** Orden global de los tipos en el inventario; define también el orden de los cursores. */
+    public static final List<String> TIPOS = List.of("Libro", "Revista", "Video");
+
+    /** Cantidad de filas por página cuando el cliente no indica {@code limit}. */
+    public static final int LIMITE_POR_DEFECTO = 100;
+
+    /** Máximo de filas por página aceptado en el modo paginado. */
+    public static final int LIMITE_MAXIMO = 1000;
+
+    /** Filas leídas por viaje al driver al transmitir el inventario. */
+    private static final int TAMANO_LOTE = 500;
+
+    /** Filas por partición del recorrido paralelo con visitantes (antes de aplicar el tope). */
+    private static final long TAMANO_PARTICION = 10_000;
+
+    /** Tope de particiones por tabla en el recorrido paralelo: 4 por núcleo. */
+    private static final int MAXIMO_PARTICIONES = 4 * Runtime.getRuntime().availableProcessors();
+
+    /** Entidades concretas del catálogo, en el orden de {@link #TIPOS}. */
+    private static final List<Class<? extends MaterialBiblioteca>> CLASES =
+            List.of(Libro.class, Revista.class, Video.class);
+
+    /** Pool dedicado a los recorridos paralelos; no compite con el pool común de la JVM. */
+    private static final ForkJoinPool POOL_RECORRIDOS =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Región de la caché de consultas para los listados del catálogo (ver {@code cache.conf}). */
+    public static final String REGION_CATALOGO = "catalogo";
+
+    /**
+     * Consulta de filas por tipo, en el orden de {@link #TIPOS}: un rango de la clave primaria
+     * de su tabla, sólo con las columnas que muestra el inventario. La tercera columna es el
+     * dato con que se arma {@code meta}. La usan el listado, las páginas y la transmisión.
+     */
+    private static final List<String> HQL_PAGINA_POR_TIPO = List.of(
+            "select l.id, l.titulo, l.isbn from Libro l where l.id > :after order by l.id",
+            "select r.id, r.titulo, r.numeroEdicion from Revista r where r.id > :after order by r.id",
+            "select v.id, v.titulo, v.duracionMinutos from Video v where v.id > :after order by v.id");
+
+    /** Prefijo de {@code meta} por tipo, igual al que arma {@link MaterialCatalogo}. */
+    private static final List<String> PREFIJOS_META = List.of("ISBN=", "issue=", "duration=");
+
     /**
      * Genera el inventario resumido en memoria.
      *
@@ -42,58 +111,267 @@ public class ServicioReportes {
      * @return lista de filas de inventario; nunca {@code null} (puede ser vacía).
      */
     public List<Map<String,Object>> resumenInventario() {
-        EntityManager em = JpaUtil.em();
+        StatelessSession ss = JpaUtil.sesionSinEstado();
         try {
             List<Map<String,Object>> out = new ArrayList<>();
+            for (int tipo = 0; tipo < TIPOS.size(); tipo++) {
+                String prefijo = PREFIJOS_META.get(tipo);
+                for (Object[] t : filasDeTipo(ss, tipo)
+                        .setCacheable(true).setCacheRegion(REGION_CATALOGO).getResultList()) {
+                    Map<String,Object> row = new HashMap<>();
+                    row.put("type",  TIPOS.get(tipo));
+                    row.put("title", t[1]);
+                    row.put("meta",  prefijo + t[2]);
+                    out.add(row);
+                }
+            }
+            return out;
+        } finally {
+            ss.close();
+        }
+    }
 
-            // Consultas por tipo concreto (legado)
-            List<Libro>   libros   = em.createQuery("from Libro",   Libro.class).getResultList();
-            List<Revista> revistas = em.createQuery("from Revista", Revista.class).getResultList();
-            List<Video>   videos   = em.createQuery("from Video",   Video.class).getResultList();
-
-            // Transformación a filas homogéneas
-            for (Libro l : libros) {
-                Map<String,Object> row = new HashMap<>();
-                row.put("type",  "Libro");
-                row.put("title", l.obtenerTitulo());
-                row.put("meta",  "ISBN=" + l.obtenerIsbn());
-                out.add(row);
+    /**
+     * Obtiene una página del inventario usando paginación por clave (<em>keyset</em>).
+     *
+     * <p>Las filas se ordenan por tipo (según {@link #TIPOS}) y luego por {@code id}. La página
+     * se arma con una consulta por tabla, empezando por el tipo del cursor: cada una es un rango
+     * {@code id > :after} sobre la clave primaria con {@code LIMIT}, y sólo se consulta el tipo
+     * siguiente si faltan filas. Así se leen a lo sumo {@code limite + 1} filas por índice, sin
+     * recorrer ni ordenar el catálogo, y el costo no depende de cuán profunda sea la página.</p>
+     *
+     * @param after  cursor {@code "<tipo>,<id>"} devuelto en la página anterior, o {@code null}
+     *               para comenzar desde el inicio.
+     * @param limite cantidad máxima de filas; se acota al rango {@code [1, LIMITE_MAXIMO]}.
+     * @return la página con sus filas y el cursor siguiente ({@code null} si no hay más).
+     * @throws IllegalArgumentException si el cursor no tiene el formato esperado.
+     */
+    public PaginaInventario paginaInventario(String after, int limite) {
+        int lim = Math.max(1, Math.min(limite, LIMITE_MAXIMO));
+
+        int desde = 0;
+        long despuesId = Long.MIN_VALUE;
+        if (after != null && !after.isBlank()) {
+            String[] partes = after.split(",", 2);
+            desde = TIPOS.indexOf(partes[0].trim());
+            if (partes.length != 2 || desde < 0) {
+                throw new IllegalArgumentException("Cursor inválido: " + after);
+            }
+            try {
+                despuesId = Long.parseLong(partes[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + after);
             }
-            for (Revista r : revistas) {
-                Map<String,Object> row = new HashMap<>();
-                row.put("type",  "Revista");
-                row.put("title", r.obtenerTitulo());
-                row.put("meta",  "issue=" + r.obtenerNumeroEdicion());
-                out.add(row);
+        }
+
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            // Un rango por tabla a partir del tipo del cursor; se pide una fila extra para saber
+            // si existe una página siguiente
+            List<Object[]> lote = new ArrayList<>(lim + 1);
+            for (int tipo = desde; tipo < TIPOS.size() && lote.size() <= lim; tipo++) {
+                String prefijo = PREFIJOS_META.get(tipo);
+                for (Object[] t : filasDeTipo(ss, tipo)
+                        .setParameter("after", tipo == desde ? despuesId : Long.MIN_VALUE)
+                        .setMaxResults(lim + 1 - lote.size())
+                        .setCacheable(true)
+                        .setCacheRegion(REGION_CATALOGO)
+                        .getResultList()) {
+                    lote.add(new Object[]{TIPOS.get(tipo), t[0], t[1], prefijo + t[2]});
+                }
             }
-            for (Video v : videos) {
-                Map<String,Object> row = new HashMap<>();
-                row.put("type",  "Video");
-                row.put("title", v.obtenerTitulo());
-                row.put("meta",  "duration=" + v.obtenerDuracionMinutos());
-                out.add(row);
+
+            List<FilaInventario> filas = new ArrayList<>(Math.min(lim, lote.size()));
+            for (int i = 0; i < lote.size() && i < lim; i++) {
+                filas.add(fila(lote.get(i)));
             }
-            return out;
+            String next = null;
+            if (lote.size() > lim) {
+                Object[] ultima = lote.get(lim - 1);
+                next = ultima[0] + "," + ultima[1];
+            }
+            return new PaginaInventario(filas, next);
         } finally {
-            em.close();
+            ss.close();
+        }
+    }
+
+    /**
+     * Filas de un tipo ({@code id}, {@code titulo} y el dato de {@code meta}) en orden de
+     * {@code id}, leídas por rango de su clave primaria; {@code after} vale
+     * {@link Long#MIN_VALUE} salvo que el llamador lo reemplace.
+     */
+    private static SelectionQuery<Object[]> filasDeTipo(StatelessSession ss, int tipo) {
+        return ss.createSelectionQuery(HQL_PAGINA_POR_TIPO.get(tipo), Object[].class)
+                .setParameter("after", Long.MIN_VALUE);
+    }
+
+    /**
+     * Escribe el inventario completo como arreglo JSON directamente en {@code out}.
+     *
+     * <p>Las tablas se leen una tras otra en el orden de {@link #TIPOS}, cada una como proyección
+     * con un cursor de solo avance sobre su clave primaria ({@code order by id}) en una
+     * {@link StatelessSession}. SQLite entrega la primera fila sin ordenar ni materializar el
+     * catálogo, y las filas se escriben a medida que llegan, sin contexto de persistencia que
+     * crezca. La memoria usada por solicitud es constante, sin importar el tamaño del catálogo.
+     * El formato y el orden de salida son idénticos a los de {@link #resumenInventario()}.</p>
+     *
+     * <p>El flujo {@code out} no se cierra: es responsabilidad del llamador.</p>
+     *
+     * @param out flujo de salida de la respuesta HTTP.
+     */
+    public void escribirInventario(OutputStream out) {
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            JsonGenerator g = Json.createGenerator(out);
+            g.writeStartArray();
+            int n = 0;
+            for (int tipo = 0; tipo < TIPOS.size(); tipo++) {
+                String nombre = TIPOS.get(tipo);
+                String prefijo = PREFIJOS_META.get(tipo);
+                try (ScrollableResults<Object[]> filas = filasDeTipo(ss, tipo)
+                        .setFetchSize(TAMANO_LOTE)
+                        .scroll(ScrollMode.FORWARD_ONLY)) {
+                    while (filas.next()) {
+                        Object[] t = filas.get();
+                        g.writeStartObject()
+                                .write("type",  nombre)
+                                .write("title", (String) t[1])
+                                .write("meta",  prefijo + t[2])
+                                .writeEnd();
+                        if (++n % TAMANO_LOTE == 0) g.flush();
+                    }
+                }
+            }
+            g.writeEnd();
+            g.flush();
+        } finally {
+            ss.close();
         }
     }
 
+    /**
+     * Calcula las estadísticas de inventario recorriendo cada material con
+     * {@link VisitanteEstadisticasInventarioJson} (ver {@link #recorrerEnParalelo(Supplier)}).
+     *
+     * @return JSON compacto con totales por tipo.
+     */
     public String estadisticasInventarioComoJson() {
-        var em = cl.biblioteca.persistencia.JpaUtil.em();
+        return recorrerEnParalelo(VisitanteEstadisticasInventarioJson::new).comoJsonString();
+    }
+
+    /**
+     * Recorre todo el catálogo con un visitante combinable, en paralelo.
+     *
+     * <p>La cantidad de particiones de cada tabla sale de su cantidad de filas, no de sus ids:
+     * una por cada {@value #TAMANO_PARTICION} filas, con un tope de {@link #MAXIMO_PARTICIONES},
+     * de modo que los huecos o un id muy grande no multiplican las tareas. Las particiones
+     * dividen en partes iguales el rango {@code [min(id), max(id)]}, que se obtiene junto con la
+     * cuenta en una sola consulta (sin recorrer la tabla para fijar los límites); con ids muy
+     * dispersos quedan desparejas, pero siguen siendo a lo sumo {@link #MAXIMO_PARTICIONES}.
+     * Cada rango se lee en un hilo del pool con su propia {@link StatelessSession} y su propio
+     * visitante, creado con {@code fabrica} y confinado a ese hilo. Al terminar, los parciales se combinan con {@link VisitanteCombinable#combinar}.
+     * El recorrido escala con la cantidad de núcleos en lugar de ejecutarse en un solo hilo.</p>
+     *
+     * @param fabrica crea un visitante vacío por partición.
+     * @param <V>     tipo del visitante.
+     * @return visitante con los resultados de todo el catálogo.
+     */
+    public <V extends VisitanteCombinable<V>> V recorrerEnParalelo(Supplier<V> fabrica) {
+        List<CompletableFuture<V>> parciales = new ArrayList<>();
+
+        StatelessSession ss = JpaUtil.sesionSinEstado();
         try {
-            var libros   = em.createQuery("from Libro",   cl.biblioteca.dominio.Libro.class).getResultList();
-            var revistas = em.createQuery("from Revista", cl.biblioteca.dominio.Revista.class).getResultList();
-            var videos   = em.createQuery("from Video",   cl.biblioteca.dominio.Video.class).getResultList();
+            for (Class<? extends MaterialBiblioteca> clase : CLASES) {
+                String entidad = clase.getSimpleName();
+                Object[] conteo = ss.createSelectionQuery(
+                        "select count(m), min(m.id), max(m.id) from " + entidad + " m", Object[].class).getSingleResult();
+                long filas = ((Number) conteo[0]).longValue();
+                if (filas == 0) continue;
 
-            var vis = new VisitanteEstadisticasInventarioJson();
-            for (var l : libros)   l.aceptar(vis);
-            for (var r : revistas) r.aceptar(vis);
-            for (var v : videos)   v.aceptar(vis);
+                long min = ((Number) conteo[1]).longValue();
+                long max = ((Number) conteo[2]).longValue();
+                long particiones = Math.min(MAXIMO_PARTICIONES, (filas + TAMANO_PARTICION - 1) / TAMANO_PARTICION);
+                long ancho = Math.subtractExact(max, min) / particiones + 1;
+                for (long k = 0; k < particiones; k++) {
+                    long d = min + k * ancho;
+                    if (d > max) break;
+                    long h = max - d < ancho ? max : d + ancho - 1;
+                    parciales.add(CompletableFuture.supplyAsync(
+                            () -> recorrerParticion(clase, d, h, fabrica.get()), POOL_RECORRIDOS));
+                }
+            }
+        } finally {
+            ss.close();
+        }
 
-            return vis.comoJsonString();
+        V total = fabrica.get();
+        for (CompletableFuture<V> parcial : parciales) {
+            total.combinar(parcial.join());
+        }
+        return total;
+    }
+
+    /** Visita los materiales de {@code clase} con id en {@code [desde, hasta]}. */
+    private static <V extends VisitanteMaterial> V recorrerParticion(
+            Class<? extends MaterialBiblioteca> clase, long desde, long hasta, V vis) {
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try (ScrollableResults<? extends MaterialBiblioteca> materiales = ss
+                .createSelectionQuery("from " + clase.getSimpleName() + " m where m.id between :desde and :hasta", clase)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .setFetchSize(TAMANO_LOTE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (materiales.next()) {
+                materiales.get().aceptar(vis);
+            }
+            return vis;
+        } finally {
+            ss.close();
+        }
+    }
+
+    /**
+     * Calcula las estadísticas de inventario con consultas agregadas ({@code COUNT}/{@code SUM})
+     * en lugar de hidratar y visitar cada entidad.
+     *
+     * <p>Devuelve exactamente el mismo JSON que {@link #estadisticasInventarioComoJson()}
+     * (incluido el tratamiento de valores negativos como 0), pero la base de datos entrega una
+     * sola fila para todo el catálogo ({@link MaterialCatalogo}), sin importar su tamaño. El
+     * recorrido con visitante se mantiene para analíticas en memoria que no puedan expresarse
+     * como agregados.</p>
+     *
+     * @return JSON compacto con totales por tipo.
+     */
+    public String estadisticasInventarioAgregadasComoJson() {
+        EntityManager em = JpaUtil.emLectura();
+        try {
+            Object[] t = em.createQuery("""
+                    select sum(case when c.tipo = 'Libro' then 1 else 0 end),
+                           sum(case when c.paginas > 0 then c.paginas else 0 end),
+                           sum(case when c.tipo = 'Revista' then 1 else 0 end),
+                           sum(case when c.tipo = 'Video' then 1 else 0 end),
+                           sum(case when c.duracionMinutos > 0 then c.duracionMinutos else 0 end)
+                    from MaterialCatalogo c
+                    """, Object[].class)
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .setHint(HibernateHints.HINT_CACHE_REGION, REGION_CATALOGO)
+                    .getSingleResult();
+
+            return VisitanteEstadisticasInventarioJson.comoJsonString(
+                    valor(t[0]), valor(t[1]), valor(t[2]), valor(t[3]), valor(t[4]));
         } finally {
             em.close();
         }
     }
+
+    /** Convierte la tupla {@code (tipo, id, titulo, meta)} en una fila del inventario. */
+    private static FilaInventario fila(Object[] t) {
+        return new FilaInventario((String) t[0], (String) t[2], (String) t[3]);
+    }
+
+    /** Valor numérico de un agregado SQL; {@code SUM} sobre cero filas devuelve {@code null}. */
+    private static long valor(Object agregado) {
+        return agregado == null ? 0 : ((Number) agregado).longValue();
+    }
 }
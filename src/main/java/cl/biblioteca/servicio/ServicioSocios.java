@@ -0,0 +1,140 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import org.hibernate.StatelessSession;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de consultas sobre la cuenta de un <strong>socio</strong>.
+ *
+ * <p>
+ * {@link #resumen(long, LocalDate)} reúne en una respuesta lo que antes requería una llamada a
+ * {@code /api/fees} por préstamo: préstamos activos y vencidos, y multas devengadas (préstamos
+ * abiertos, a la fecha de corte) y finales (préstamos devueltos).
+ * </p>
+ *
+ * <h2>Cálculo</h2>
+ * <ul>
+ *   <li>Una sola consulta: el socio con sus préstamos ({@code left join}, vía el índice
+ *       {@code socio_id}), contados en SQL por grupo de préstamos con la misma multa (abierto,
+ *       días de atraso, vencimiento en domingo). Se transfieren unas decenas de filas, no una
+ *       por préstamo.</li>
+ *   <li>La multa de cada grupo se calcula una vez con {@link MotorMultasColumnar}, con la
+ *       política del libro de multas ({@link LibroMultas#REGLAS}) y los parámetros vigentes, y
+ *       se multiplica por la cantidad. Las reglas siguen en un solo lugar, el motor, en lugar
+ *       de duplicarse en SQL.</li>
+ *   <li>El resultado se cachea por socio en {@link CacheSocios}.</li>
+ * </ul>
+ */
+public class ServicioSocios {
+
+    /**
+     * Resumen de cuenta de un socio, desde la caché si está vigente.
+     *
+     * @param socioId socio consultado.
+     * @param hoy     fecha de corte para los préstamos abiertos.
+     * @return mapa con {@code socioId}, {@code nombre}, {@code premium}, {@code prestamos},
+     *         {@code activos}, {@code vencidos}, {@code multas} ({@code devengadas},
+     *         {@code finales}, {@code total}) y {@code fechaCorte}; o {@code null} si el socio no existe.
+     */
+    public Map<String,Object> resumen(long socioId, LocalDate hoy) {
+        return CacheSocios.obtener(socioId, hoy, () -> calcularResumen(socioId, hoy));
+    }
+
+    /**
+     * Préstamos del socio agrupados por lo único de que depende su multa: si está abierto, los
+     * días de atraso (al corte si está abierto; {@code null} sin vencimiento) y si vence en
+     * domingo. Un socio sin préstamos devuelve una fila con cantidad cero.
+     */
+    private static final String SQL_RESUMEN = """
+            select s.nombre, s.premium,
+                   p.fechaDevolucion is null as abierto,
+                   max(0, cast(julianday(date(coalesce(p.fechaDevolucion, :hoy)))
+                               - julianday(date(p.fechaVencimiento)) as integer)) as dias,
+                   strftime('%w', p.fechaVencimiento) = '0' as domingo,
+                   count(p.id)
+            from Socio s left join Prestamo p on p.socio_id = s.id
+            where s.id = :id
+            group by abierto, dias, domingo
+            """;
+
+    /** Un lunes y un domingo cualesquiera, para reconstruir un préstamo representativo. */
+    private static final LocalDate LUNES = LocalDate.of(1970, 1, 5);
+    private static final LocalDate DOMINGO = LocalDate.of(1970, 1, 4);
+
+    private static Map<String,Object> calcularResumen(long socioId, LocalDate hoy) {
+        List<Object[]> grupos;
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            grupos = ss.createNativeQuery(SQL_RESUMEN, Object[].class)
+                    .setParameter("id", socioId)
+                    .setParameter("hoy", hoy.toString())
+                    .getResultList();
+        } finally {
+            ss.close();
+        }
+        if (grupos.isEmpty()) return null;
+
+        // Un préstamo representativo por grupo; su multa vale para todo el grupo
+        boolean premium = verdadero(grupos.get(0)[1]);
+        ColumnasPrestamos c = new ColumnasPrestamos(grupos.size());
+        int[] cantidades = new int[grupos.size()];
+        boolean[] abierto = new boolean[grupos.size()];
+        int prestamos = 0;
+        int activos = 0;
+        int vencidos = 0;
+        for (Object[] g : grupos) {
+            int n = ((Number) g[5]).intValue();
+            if (n == 0) continue; // socio sin préstamos
+            boolean abiertos = verdadero(g[2]);
+            prestamos += n;
+            if (abiertos) {
+                activos += n;
+                if (g[3] != null && ((Number) g[3]).longValue() > 0) vencidos += n;
+            }
+            LocalDate vence = null;
+            LocalDate devuelto = hoy;
+            if (g[3] != null) {
+                vence = verdadero(g[4]) ? DOMINGO : LUNES;
+                devuelto = vence.plusDays(((Number) g[3]).longValue());
+            }
+            cantidades[c.tamano()] = n;
+            abierto[c.tamano()] = abiertos;
+            c.agregar(c.tamano(), vence, devuelto, premium);
+        }
+
+        long[] montos = new long[c.tamano()];
+        RegistroCadenasMulta.motor(LibroMultas.REGLAS).calcular(c, montos);
+        long devengadas = 0;
+        long finales = 0;
+        for (int i = 0; i < c.tamano(); i++) {
+            if (abierto[i]) devengadas += montos[i] * cantidades[i];
+            else finales += montos[i] * cantidades[i];
+        }
+
+        Map<String,Object> multas = new LinkedHashMap<>();
+        multas.put("devengadas", devengadas / 100.0);
+        multas.put("finales", finales / 100.0);
+        multas.put("total", (devengadas + finales) / 100.0);
+
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("socioId", socioId);
+        out.put("nombre", grupos.get(0)[0]);
+        out.put("premium", premium);
+        out.put("prestamos", prestamos);
+        out.put("activos", activos);
+        out.put("vencidos", vencidos);
+        out.put("multas", multas);
+        out.put("fechaCorte", hoy.toString());
+        return out;
+    }
+
+    /** Valor lógico de una columna nativa, que el controlador entrega como booleano o entero. */
+    private static boolean verdadero(Object valor) {
+        return valor instanceof Boolean b ? b : ((Number) valor).intValue() != 0;
+    }
+}
@@ -0,0 +1,326 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.metricas.Histograma;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulador de recaudación <em>what-if</em> sobre el historial de préstamos.
+ *
+ * <p>
+ * Evalúa una grilla de escenarios &mdash; cada combinación de {@link ReglasMulta} por cada
+ * juego de {@link ParametrosMulta} &mdash; y entrega, por escenario, el total recaudado y la
+ * distribución de las multas. El historial se carga una sola vez en {@link ColumnasPrestamos}
+ * y cada escenario es un recorrido de {@link MotorMultasColumnar} sobre esos arreglos, en
+ * paralelo en todos los núcleos.
+ * </p>
+ *
+ * <h2>Trabajos</h2>
+ * <ul>
+ *   <li>{@link #lanzar(LocalDate, LocalDate, List)} encola la simulación y devuelve su
+ *       identificador; las simulaciones corren de a una en el hilo {@code simulaciones}, fuera
+ *       de los hilos de solicitud, y {@link #estado(long)} informa su progreso o resultado.</li>
+ *   <li>Se aceptan a lo sumo {@value #MAXIMO_PENDIENTES} simulaciones en espera o en curso, y
+ *       cada una se cancela si excede {@link #LIMITE_EJECUCION}.</li>
+ *   <li>Se recuerdan las últimas {@value #MAXIMO_TRABAJOS} simulaciones.</li>
+ * </ul>
+ *
+ * <h2>Notas</h2>
+ * <ul>
+ *   <li>El historial cargado se conserva mientras no cambie la versión del catálogo
+ *       ({@link CacheReportes#version()}) ni el rango pedido; simulaciones sucesivas no vuelven
+ *       a leer la base de datos. Se retiene un solo historial, de a lo sumo
+ *       {@value #MAXIMO_PRESTAMOS_RETENIDOS} préstamos, y se libera tras
+ *       {@link #VIGENCIA_HISTORIAL} sin usarse.</li>
+ *   <li>Cada escenario informa además su diferencia con la base: parámetros vigentes y
+ *       todas las reglas activas ({@link LibroMultas#REGLAS}).</li>
+ *   <li>Los percentiles se calculan sobre los préstamos con multa mayor que cero, con un
+ *       {@link Histograma} por escenario (sin ordenar los montos): cada uno es el límite
+ *       superior de su cubeta, con un error relativo de a lo sumo 1/{@value Histograma#SUBCUBETAS}.
+ *       El máximo es exacto.</li>
+ * </ul>
+ */
+public class SimuladorMultas {
+
+    /** Máximo de escenarios por simulación (combinaciones de reglas &times; juegos de parámetros). */
+    public static final int MAXIMO_ESCENARIOS = 4096;
+
+    /** Simulaciones en espera o en curso aceptadas a la vez. */
+    public static final int MAXIMO_PENDIENTES = 4;
+
+    /** Simulaciones recordadas (las más antiguas se olvidan). */
+    public static final int MAXIMO_TRABAJOS = 32;
+
+    /** Tiempo máximo de una simulación desde que empieza a correr. */
+    public static final Duration LIMITE_EJECUCION = Duration.ofMinutes(2);
+
+    /** Tiempo sin usarse tras el cual se libera el historial cargado. */
+    public static final Duration VIGENCIA_HISTORIAL = Duration.ofMinutes(10);
+
+    /** Historiales más grandes no se retienen entre simulaciones. */
+    public static final int MAXIMO_PRESTAMOS_RETENIDOS = 2_000_000;
+
+    /** Pool dedicado a las simulaciones; no compite con el pool común de la JVM. */
+    private static final ForkJoinPool POOL_SIMULACIONES =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Ejecuta las simulaciones de a una y libera el historial vencido. */
+    private static final ScheduledExecutorService hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "simulaciones");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+    private static final AtomicInteger pendientes = new AtomicInteger();
+
+    /** Simulaciones recordadas por id, en orden de creación. */
+    private static final Map<Long, Trabajo> TRABAJOS = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Trabajo> mayor) {
+            return size() > MAXIMO_TRABAJOS;
+        }
+    };
+
+    /** Estado de una simulación lanzada con {@link #lanzar}. */
+    private static final class Trabajo {
+        final long id;
+        final Instant creado = Instant.now();
+        volatile String estado = "enEspera";
+        volatile Instant inicio;
+        volatile Instant fin;
+        volatile Map<String,Object> resultado;
+        volatile String error;
+
+        Trabajo(long id) { this.id = id; }
+    }
+
+    /** Historial cargado y la versión/rango con que se cargó. */
+    private record Historial(long version, LocalDate desde, LocalDate hasta, ColumnasPrestamos columnas) { }
+
+    private static volatile Historial historial;
+    private static volatile long ultimoUsoHistorial;
+
+    /**
+     * Encola una simulación (ver {@link #simular}) para correr en segundo plano.
+     *
+     * @param desde  inicio del rango de devolución, o {@code null} junto con {@code hasta}.
+     * @param hasta  fin del rango de devolución.
+     * @param grilla juegos de parámetros a evaluar (no vacía).
+     * @return identificador para consultar con {@link #estado(long)}.
+     * @throws IllegalArgumentException   si la grilla está vacía o excede {@link #MAXIMO_ESCENARIOS}.
+     * @throws RejectedExecutionException si ya hay {@value #MAXIMO_PENDIENTES} simulaciones
+     *                                    pendientes.
+     */
+    public static long lanzar(LocalDate desde, LocalDate hasta, List<ParametrosMulta> grilla) {
+        if (grilla.isEmpty()) throw new IllegalArgumentException("La grilla de parámetros está vacía");
+        verificarEscenarios(grilla.size());
+        if (pendientes.incrementAndGet() > MAXIMO_PENDIENTES) {
+            pendientes.decrementAndGet();
+            throw new RejectedExecutionException("Hay " + MAXIMO_PENDIENTES + " simulaciones pendientes; reintente más tarde");
+        }
+        List<ParametrosMulta> copia = List.copyOf(grilla);
+        Trabajo t = new Trabajo(SECUENCIA.incrementAndGet());
+        synchronized (TRABAJOS) {
+            TRABAJOS.put(t.id, t);
+        }
+        hilo.execute(() -> correr(t, desde, hasta, copia));
+        return t.id;
+    }
+
+    /**
+     * Estado de una simulación.
+     *
+     * @param id identificador devuelto por {@link #lanzar}.
+     * @return mapa con {@code id}, {@code estado} ({@code enEspera}, {@code enCurso},
+     *         {@code completada} o {@code fallida}), {@code creada}, {@code inicio},
+     *         {@code fin}, {@code duracionMs}, {@code error} y, si terminó bien,
+     *         {@code resultado}; vacío si no existe o ya se olvidó.
+     */
+    public static Optional<Map<String,Object>> estado(long id) {
+        Trabajo t;
+        synchronized (TRABAJOS) {
+            t = TRABAJOS.get(id);
+        }
+        if (t == null) return Optional.empty();
+        Instant i = t.inicio;
+        Instant f = t.fin;
+        Map<String,Object> m = new LinkedHashMap<>();
+        m.put("id", t.id);
+        m.put("estado", t.estado);
+        m.put("creada", t.creado.toString());
+        m.put("inicio", i == null ? null : i.toString());
+        m.put("fin", f == null ? null : f.toString());
+        m.put("duracionMs", i == null ? null : Duration.between(i, f == null ? Instant.now() : f).toMillis());
+        m.put("error", t.error);
+        if (t.resultado != null) m.put("resultado", t.resultado);
+        return Optional.of(m);
+    }
+
+    private static void correr(Trabajo t, LocalDate desde, LocalDate hasta, List<ParametrosMulta> grilla) {
+        t.inicio = Instant.now();
+        t.estado = "enCurso";
+        try {
+            t.resultado = new SimuladorMultas().simular(desde, hasta, grilla);
+            t.estado = "completada";
+        } catch (RuntimeException e) {
+            t.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            t.estado = "fallida";
+        } finally {
+            t.fin = Instant.now();
+            pendientes.decrementAndGet();
+            hilo.schedule(SimuladorMultas::liberarHistorialVencido,
+                    VIGENCIA_HISTORIAL.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Libera el historial si no se usó durante {@link #VIGENCIA_HISTORIAL}. */
+    private static void liberarHistorialVencido() {
+        if (System.nanoTime() - ultimoUsoHistorial >= VIGENCIA_HISTORIAL.toNanos()) historial = null;
+    }
+
+    /**
+     * Verifica, antes de construir la grilla, que el producto cartesiano de listas con los
+     * tamaños indicados (por cada combinación de reglas) no exceda {@link #MAXIMO_ESCENARIOS}.
+     *
+     * @param tamanos cantidad de valores de cada parámetro.
+     * @throws IllegalArgumentException si la grilla resultante excedería el máximo.
+     */
+    public static void verificarEscenarios(int... tamanos) {
+        long escenarios = 1L << ReglasMulta.CANTIDAD;
+        for (int t : tamanos) {
+            escenarios *= t;
+            if (escenarios > MAXIMO_ESCENARIOS) {
+                throw new IllegalArgumentException("Máximo " + MAXIMO_ESCENARIOS + " escenarios por simulación");
+            }
+        }
+    }
+
+    /**
+     * Simula todas las combinaciones de reglas para cada juego de parámetros de la grilla, en
+     * el hilo que la invoca (los escenarios corren en el pool de simulaciones). Las solicitudes
+     * HTTP usan {@link #lanzar}.
+     *
+     * @param desde  inicio del rango de devolución, o {@code null} junto con {@code hasta}
+     *               para todo el historial.
+     * @param hasta  fin del rango de devolución.
+     * @param grilla juegos de parámetros a evaluar (no vacía).
+     * @return mapa con {@code prestamos}, {@code base} y {@code escenarios} (uno por combinación
+     *         de reglas y juego de parámetros, en ese orden).
+     * @throws IllegalArgumentException si la grilla está vacía o excede {@link #MAXIMO_ESCENARIOS}.
+     * @throws IllegalStateException    si excede {@link #LIMITE_EJECUCION}.
+     */
+    public Map<String,Object> simular(LocalDate desde, LocalDate hasta, List<ParametrosMulta> grilla) {
+        int combinaciones = 1 << ReglasMulta.CANTIDAD;
+        if (grilla.isEmpty()) throw new IllegalArgumentException("La grilla de parámetros está vacía");
+        verificarEscenarios(grilla.size());
+        ColumnasPrestamos c = historial(desde, hasta);
+
+        ParametrosMulta vigentes = RegistroCadenasMulta.parametros();
+        CompletableFuture<Map<String,Object>> base = CompletableFuture.supplyAsync(
+                () -> evaluar(c, LibroMultas.REGLAS, vigentes), POOL_SIMULACIONES);
+        List<CompletableFuture<Map<String,Object>>> parciales = new ArrayList<>();
+        for (ParametrosMulta p : grilla) {
+            for (int i = 0; i < combinaciones; i++) {
+                ReglasMulta r = ReglasMulta.desdeIndice(i);
+                parciales.add(CompletableFuture.supplyAsync(() -> evaluar(c, r, p), POOL_SIMULACIONES));
+            }
+        }
+
+        long limite = System.nanoTime() + LIMITE_EJECUCION.toNanos();
+        double montoBase = (Double) esperar(base, limite, parciales).get("montoTotal");
+        List<Map<String,Object>> escenarios = new ArrayList<>(parciales.size());
+        for (CompletableFuture<Map<String,Object>> parcial : parciales) {
+            Map<String,Object> e = esperar(parcial, limite, parciales);
+            e.put("diferencia", ((Double) e.get("montoTotal")) - montoBase);
+            escenarios.add(e);
+        }
+
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("prestamos", c.tamano());
+        out.put("base", base.join());
+        out.put("escenarios", escenarios);
+        return out;
+    }
+
+    /**
+     * Espera un escenario hasta {@code limite} ({@link System#nanoTime()}); al vencer cancela
+     * los escenarios que aún no empezaron.
+     */
+    private static Map<String,Object> esperar(CompletableFuture<Map<String,Object>> f, long limite,
+                                              List<CompletableFuture<Map<String,Object>>> todos) {
+        try {
+            return f.get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            todos.forEach(p -> p.cancel(false));
+            throw new IllegalStateException("La simulación excedió " + LIMITE_EJECUCION.toSeconds() + " s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            todos.forEach(p -> p.cancel(false));
+            throw new IllegalStateException("Simulación interrumpida");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException r ? r : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Devuelve el historial vigente para el rango, cargándolo si cambió la versión o el rango.
+     * Sólo se retiene si no supera {@link #MAXIMO_PRESTAMOS_RETENIDOS} préstamos.
+     */
+    private static ColumnasPrestamos historial(LocalDate desde, LocalDate hasta) {
+        long v = CacheReportes.version();
+        ultimoUsoHistorial = System.nanoTime();
+        Historial h = historial;
+        if (h == null || h.version() != v || !Objects.equals(h.desde(), desde) || !Objects.equals(h.hasta(), hasta)) {
+            historial = null;
+            ColumnasPrestamos c = ColumnasPrestamos.cargar(desde, hasta);
+            if (c.tamano() > MAXIMO_PRESTAMOS_RETENIDOS) return c;
+            h = new Historial(v, desde, hasta, c);
+            historial = h;
+        }
+        return h.columnas();
+    }
+
+    /** Evalúa un escenario y resume su distribución. */
+    private static Map<String,Object> evaluar(ColumnasPrestamos c, ReglasMulta r, ParametrosMulta p) {
+        int n = c.tamano();
+        long[] montos = new long[n];
+        long total = new MotorMultasColumnar(r, p.costoPorDia(), p.porcentajeDescuento(),
+                p.umbralDias(), p.recargoFijo()).calcular(c, montos);
+
+        // Distribución de las multas positivas, sin ordenar los montos
+        Histograma h = new Histograma();
+        for (int i = 0; i < n; i++) {
+            if (montos[i] > 0) h.registrar(montos[i]);
+        }
+        long conMulta = h.cantidad();
+
+        Map<String,Object> e = new LinkedHashMap<>();
+        e.put("reglas", Map.of(
+                "exencionFeriado", r.exencionFeriado(),
+                "descuentoPremium", r.descuentoPremium(),
+                "sobrecargoAltaDemanda", r.sobrecargoAltaDemanda()));
+        e.put("parametros", p);
+        e.put("montoTotal", total / 100.0);
+        e.put("conMulta", conMulta);
+        e.put("promedio", conMulta == 0 ? 0.0 : total / 100.0 / conMulta);
+        e.put("p50", h.percentil(0.50) / 100.0);
+        e.put("p90", h.percentil(0.90) / 100.0);
+        e.put("p99", h.percentil(0.99) / 100.0);
+        e.put("maximo", h.maximo() / 100.0);
+        return e;
+    }
+}
@@ -0,0 +1,76 @@
+package cl.biblioteca.servicio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalescencia de solicitudes concurrentes (<em>single-flight</em>).
+ *
+ * <p>
+ * Cuando varias solicitudes piden el mismo cálculo (misma clave) mientras éste está en curso,
+ * sólo la primera lo ejecuta; las demás esperan y reciben su mismo resultado (o su misma
+ * excepción). Al terminar, la clave se libera: una solicitud posterior vuelve a calcular, de
+ * modo que nunca se reutiliza un resultado ya finalizado.
+ * </p>
+ *
+ * <h2>Métricas</h2>
+ * <ul>
+ *   <li>{@link #ejecuciones()}: cálculos efectivamente ejecutados.</li>
+ *   <li>{@link #coalescidas()}: solicitudes que se sumaron a un cálculo en curso.</li>
+ * </ul>
+ *
+ * @param <V> tipo del resultado.
+ */
+public final class VueloUnico<V> {
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> enCurso = new ConcurrentHashMap<>();
+    private final LongAdder ejecuciones = new LongAdder();
+    private final LongAdder coalescidas = new LongAdder();
+
+    /**
+     * Ejecuta {@code calculo} o se suma al que ya esté en curso para {@code clave}.
+     *
+     * @param clave   identificador del cálculo; solicitudes con igual clave se coalescen.
+     * @param calculo cálculo a ejecutar si no hay uno en curso.
+     * @return resultado compartido.
+     * @throws RuntimeException la misma excepción que haya lanzado el cálculo.
+     */
+    public V ejecutar(String clave, Supplier<V> calculo) {
+        CompletableFuture<V> propio = new CompletableFuture<>();
+        CompletableFuture<V> existente = enCurso.putIfAbsent(clave, propio);
+        if (existente != null) {
+            coalescidas.increment();
+            try {
+                return existente.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                if (e.getCause() instanceof Error err) throw err;
+                throw e;
+            }
+        }
+
+        ejecuciones.increment();
+        try {
+            V valor = calculo.get();
+            propio.complete(valor);
+            return valor;
+        } catch (RuntimeException | Error e) {
+            propio.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propio);
+        }
+    }
+
+    /** @return cantidad de cálculos ejecutados. */
+    public long ejecuciones() { return ejecuciones.sum(); }
+
+    /** @return cantidad de solicitudes atendidas con el resultado de otro cálculo en curso. */
+    public long coalescidas() { return coalescidas.sum(); }
+
+    /** @return cálculos en curso en este momento. */
+    public int enCurso() { return enCurso.size(); }
+}
@@ -4,4 +4,17 @@ import cl.biblioteca.dominio.Prestamo;
 
 public interface CalculadoraDeMulta {
     double calcular(Prestamo prestamo);
-}
\ No newline at end of file
+
+    /**
+     * Evalúa la cadena completa una sola vez y devuelve el monto tras cada capa.
+     * Cada capa se ejecuta exactamente una vez, sin importar la profundidad de la cadena.
+     */
+    default DesgloseMulta evaluar(Prestamo prestamo) {
+        DesgloseMulta d = new DesgloseMulta(prestamo);
+        aplicar(d);
+        return d;
+    }
+
+    /** Aplica las capas hasta ésta sobre {@code d}, registrando cada una; devuelve el monto acumulado. */
+    double aplicar(DesgloseMulta d);
+}
@@ -1,22 +1,47 @@
 package cl.biblioteca.servicio.decorator;
 
-import cl.biblioteca.dominio.Prestamo;
-
-/** Si el socio es premium, aplica 20% de descuento. */
+/**
+ * Si el socio es premium, aplica 20% de descuento. El porcentaje se aplica en puntos básicos
+ * sobre centavos enteros, redondeando la mitad hacia arriba ({@link #descontar}), de modo que
+ * el resultado no depende del redondeo de {@code double} y coincide con {@code MotorMultasColumnar}.
+ */
 public class DescuentoPremium extends MultaDecorador {
-    private final double porcentaje; // 0.20 => 20%
+
+    /** Nombre de la capa en {@link DesgloseMulta}. */
+    public static final String CAPA = "despuesDescuento";
+
+    /** Puntos básicos de un 100 %. */
+    public static final int ESCALA = 10_000;
+
+    private final int puntosBasicos; // 2000 => 20%
 
     public DescuentoPremium(CalculadoraDeMulta siguiente) { this(siguiente, 0.20); }
     public DescuentoPremium(CalculadoraDeMulta siguiente, double porcentaje) {
         super(siguiente);
-        this.porcentaje = porcentaje;
+        this.puntosBasicos = puntosBasicos(porcentaje);
     }
 
-    public double calcular(Prestamo p) {
-        double valor = siguiente.calcular(p);
-        if (p.obtenerSocio() != null && p.obtenerSocio().esPremium()) {
-            valor = valor * (1.0 - porcentaje);
+    protected double ajustar(double valor, DesgloseMulta d) {
+        var socio = d.prestamo().obtenerSocio();
+        if (socio != null && socio.esPremium()) {
+            valor = descontar(Math.round(valor * 100), puntosBasicos) / 100.0;
         }
         return valor;
     }
+
+    protected String capa() { return CAPA; }
+
+    /** @return {@code porcentaje} (fracción, 0.20 =&gt; 20 %) en puntos básicos, redondeado. */
+    public static int puntosBasicos(double porcentaje) {
+        return (int) Math.round(porcentaje * ESCALA);
+    }
+
+    /**
+     * Descuenta {@code puntosBasicos} de un monto no negativo en centavos, con redondeo de la
+     * mitad hacia arriba y sin desbordar para cualquier monto {@code long}.
+     */
+    public static long descontar(long centavos, int puntosBasicos) {
+        long resto = ESCALA - puntosBasicos;
+        return centavos / ESCALA * resto + (centavos % ESCALA * resto + ESCALA / 2) / ESCALA;
+    }
 }
@@ -0,0 +1,64 @@
+package cl.biblioteca.servicio.decorator;
+
+import cl.biblioteca.dominio.Prestamo;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resultado de evaluar una cadena de multas sobre un préstamo en una sola pasada.
+ *
+ * <p>Calcula una única vez los datos derivados del préstamo que usan las capas (días de
+ * atraso, vencimiento en domingo) y registra el monto acumulado tras cada capa, en el orden
+ * en que se aplicaron.</p>
+ */
+public final class DesgloseMulta {
+
+    private final Prestamo prestamo;
+    private final long diasAtraso;
+    private final boolean vencimientoEsDomingo;
+    private final Map<String, Double> capas = new LinkedHashMap<>();
+    private double monto;
+
+    public DesgloseMulta(Prestamo p) {
+        this.prestamo = p;
+        this.diasAtraso = (p.obtenerFechaDevolucion() == null || p.obtenerFechaVencimiento() == null)
+                ? 0
+                : Math.max(0, ChronoUnit.DAYS.between(p.obtenerFechaVencimiento(), p.obtenerFechaDevolucion()));
+        this.vencimientoEsDomingo = p.obtenerFechaVencimiento() != null
+                && p.obtenerFechaVencimiento().getDayOfWeek().getValue() == 7;
+    }
+
+    /** @return préstamo evaluado. */
+    public Prestamo prestamo() { return prestamo; }
+
+    /** @return días de atraso efectivos; 0 si no se ha devuelto. */
+    public long diasAtraso() { return diasAtraso; }
+
+    /** @return {@code true} si el vencimiento cae en domingo. */
+    public boolean vencimientoEsDomingo() { return vencimientoEsDomingo; }
+
+    /** Registra el monto acumulado tras la capa {@code nombre}. */
+    void registrar(String nombre, double valor) {
+        capas.put(nombre, valor);
+        monto = valor;
+    }
+
+    /** @return monto final (tras la última capa). */
+    public double monto() { return monto; }
+
+    /**
+     * Monto acumulado tras la capa {@code nombre}.
+     *
+     * @param siAusente valor a devolver si esa capa no forma parte de la cadena.
+     */
+    public double montoTras(String nombre, double siAusente) {
+        Double v = capas.get(nombre);
+        return v == null ? siAusente : v;
+    }
+
+    /** @return montos por capa, en orden de aplicación. */
+    public Map<String, Double> capas() { return Collections.unmodifiableMap(capas); }
+}
@@ -1,17 +1,20 @@
 package cl.biblioteca.servicio.decorator;
 
-import cl.biblioteca.dominio.Prestamo;
-
 /** Si el vencimiento cae en domingo, pone la multa en 0 (luego otros decoradores pueden actuar). */
 public class ExencionFeriado extends MultaDecorador {
+
+    /** Nombre de la capa en {@link DesgloseMulta}. */
+    public static final String CAPA = "despuesExencion";
+
     public ExencionFeriado(CalculadoraDeMulta siguiente) { super(siguiente); }
 
 
-    public double calcular(Prestamo p) {
-        double valor = siguiente.calcular(p);
-        if (vencimientoEsDomingo(p)) {
+    protected double ajustar(double valor, DesgloseMulta d) {
+        if (d.vencimientoEsDomingo()) {
             valor = 0.0;
         }
         return valor;
     }
+
+    protected String capa() { return CAPA; }
 }
@@ -2,11 +2,12 @@ package cl.biblioteca.servicio.decorator;
 
 import cl.biblioteca.dominio.Prestamo;
 
-import java.time.temporal.ChronoUnit;
-
 /** Base: $100 por día de atraso. Si no hay devolución, multa 0. */
 public class MultaBase implements CalculadoraDeMulta {
 
+    /** Nombre de la capa en {@link DesgloseMulta}. */
+    public static final String CAPA = "base";
+
     private final int costoPorDia;
 
     public MultaBase() { this(100); }
@@ -14,9 +15,13 @@ public class MultaBase implements CalculadoraDeMulta {
 
     @Override
     public double calcular(Prestamo p) {
-        if (p.obtenerFechaDevolucion() == null) return 0.0;
-        long diasAtraso = Math.max(0, ChronoUnit.DAYS.between(
-                p.obtenerFechaVencimiento(), p.obtenerFechaDevolucion()));
-        return diasAtraso * (double) costoPorDia;
+        return aplicar(new DesgloseMulta(p));
+    }
+
+    @Override
+    public double aplicar(DesgloseMulta d) {
+        double valor = d.prestamo().obtenerFechaDevolucion() == null ? 0.0 : d.diasAtraso() * (double) costoPorDia;
+        d.registrar(CAPA, valor);
+        return valor;
     }
-}
\ No newline at end of file
+}
@@ -2,8 +2,6 @@ package cl.biblioteca.servicio.decorator;
 
 import cl.biblioteca.dominio.Prestamo;
 
-import java.time.temporal.ChronoUnit;
-
 public abstract class MultaDecorador implements CalculadoraDeMulta {
     protected final CalculadoraDeMulta siguiente;
 
@@ -11,14 +9,21 @@ public abstract class MultaDecorador implements CalculadoraDeMulta {
         this.siguiente = siguiente;
     }
 
-    protected long diasAtraso(Prestamo p) {
-        if (p.obtenerFechaDevolucion() == null || p.obtenerFechaVencimiento() == null) return 0;
-        return Math.max(0, ChronoUnit.DAYS.between(
-                p.obtenerFechaVencimiento(), p.obtenerFechaDevolucion()));
+    @Override
+    public double calcular(Prestamo p) {
+        return aplicar(new DesgloseMulta(p));
     }
 
-    protected boolean vencimientoEsDomingo(Prestamo p) {
-        return p.obtenerFechaVencimiento() != null
-                && p.obtenerFechaVencimiento().getDayOfWeek().getValue() == 7;
+    @Override
+    public final double aplicar(DesgloseMulta d) {
+        double valor = ajustar(siguiente.aplicar(d), d);
+        d.registrar(capa(), valor);
+        return valor;
     }
-}
\ No newline at end of file
+
+    /** Ajusta el monto acumulado por las capas internas según la regla de este decorador. */
+    protected abstract double ajustar(double valor, DesgloseMulta d);
+
+    /** Nombre con que esta capa queda registrada en {@link DesgloseMulta}. */
+    protected abstract String capa();
+}
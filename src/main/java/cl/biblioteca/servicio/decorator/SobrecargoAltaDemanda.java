@@ -1,9 +1,11 @@
 package cl.biblioteca.servicio.decorator;
 
-import cl.biblioteca.dominio.Prestamo;
-
 /** Si el atraso es > umbral (3 días por defecto), suma un recargo fijo ($200). */
 public class SobrecargoAltaDemanda extends MultaDecorador {
+
+    /** Nombre de la capa en {@link DesgloseMulta}. */
+    public static final String CAPA = "despuesSobrecargo";
+
     private final int umbralDias;
     private final int recargoFijo;
 
@@ -17,11 +19,12 @@ public class SobrecargoAltaDemanda extends MultaDecorador {
         this.recargoFijo = recargoFijo;
     }
 
-    public double calcular(Prestamo p) {
-        double valor = siguiente.calcular(p);
-        if (diasAtraso(p) > umbralDias) {
+    protected double ajustar(double valor, DesgloseMulta d) {
+        if (d.diasAtraso() > umbralDias) {
             valor += recargoFijo;
         }
         return valor;
     }
-}
\ No newline at end of file
+
+    protected String capa() { return CAPA; }
+}
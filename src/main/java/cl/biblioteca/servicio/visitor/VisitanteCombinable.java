@@ -0,0 +1,21 @@
+package cl.biblioteca.servicio.visitor;
+
+/**
+ * Visitante cuyos resultados parciales pueden combinarse.
+ *
+ * <p>Permite recorrer el catálogo por particiones en paralelo: cada hilo alimenta su propia
+ * instancia (confinada a ese hilo) y al final los parciales se combinan en una sola. La
+ * combinación debe ser asociativa, de modo que el resultado no dependa de cómo se dividió el
+ * recorrido.</p>
+ *
+ * @param <V> tipo concreto del visitante.
+ */
+public interface VisitanteCombinable<V extends VisitanteCombinable<V>> extends VisitanteMaterial {
+
+    /**
+     * Incorpora a este visitante los acumulados de {@code otro}.
+     *
+     * @param otro visitante con resultados parciales; no se modifica.
+     */
+    void combinar(V otro);
+}
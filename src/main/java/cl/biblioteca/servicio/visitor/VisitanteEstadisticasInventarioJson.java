@@ -6,10 +6,11 @@ import cl.biblioteca.dominio.Video;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 
-public class VisitanteEstadisticasInventarioJson implements VisitanteMaterial {
+public class VisitanteEstadisticasInventarioJson
+        implements VisitanteCombinable<VisitanteEstadisticasInventarioJson> {
 
-    private int totalLibros, totalRevistas, totalVideos;
-    private int paginasTotalesLibros, duracionTotalVideosMin;
+    private long totalLibros, totalRevistas, totalVideos;
+    private long paginasTotalesLibros, duracionTotalVideosMin;
 
     public void visitar(Libro l)   {
         totalLibros++;
@@ -23,8 +24,25 @@ public class VisitanteEstadisticasInventarioJson implements VisitanteMaterial {
         duracionTotalVideosMin += Math.max(0, v.obtenerDuracionMinutos());
     }
 
+    public void combinar(VisitanteEstadisticasInventarioJson otro) {
+        totalLibros            += otro.totalLibros;
+        totalRevistas          += otro.totalRevistas;
+        totalVideos            += otro.totalVideos;
+        paginasTotalesLibros   += otro.paginasTotalesLibros;
+        duracionTotalVideosMin += otro.duracionTotalVideosMin;
+    }
+
     /** Devuelve el JSON final como String. */
     public String comoJsonString() {
+        return comoJsonString(totalLibros, paginasTotalesLibros, totalRevistas, totalVideos, duracionTotalVideosMin);
+    }
+
+    /**
+     * Construye el JSON de estadísticas a partir de totales ya calculados (por ejemplo, con
+     * agregados SQL), con la misma forma que produce el recorrido del visitante.
+     */
+    public static String comoJsonString(long totalLibros, long paginasTotalesLibros,
+                                        long totalRevistas, long totalVideos, long duracionTotalVideosMin) {
         double promedio = totalLibros == 0 ? 0.0 : (paginasTotalesLibros * 1.0 / totalLibros);
 
         JsonObject json = Json.createObjectBuilder()
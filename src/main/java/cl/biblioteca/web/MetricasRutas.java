@@ -0,0 +1,205 @@
+package cl.biblioteca.web;
+
+import cl.biblioteca.metricas.Histograma;
+import cl.biblioteca.metricas.TextoPrometheus;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import org.eclipse.jetty.server.Request;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latencia y volumen de solicitudes HTTP por <em>plantilla</em> de ruta
+ * (p. ej. {@code GET /api/fees/{prestamoId}}, no cada URL concreta).
+ *
+ * <p>
+ * Un manejador {@code after} de Javalin registra cada solicitud en el {@link Histograma} de su
+ * ruta y método, y cuenta la respuesta según su código de estado. La latencia se mide desde
+ * que Jetty recibió la solicitud ({@link Request#getBeginNanoTime()}) hasta que terminan los
+ * manejadores, por lo que incluye los {@code before} y las respuestas asíncronas
+ * ({@code ctx.future}). Tras la primera solicitud de cada ruta, registrar no reserva memoria:
+ * es una búsqueda en un mapa por la plantilla (un {@code String} ya existente) y dos
+ * incrementos atómicos.
+ * </p>
+ *
+ * <h2>Exposición</h2>
+ * <ul>
+ *   <li>{@link #exportar(TextoPrometheus)}: {@code biblioteca_http_duracion_segundos}
+ *       (histograma por {@code metodo} y {@code ruta}) y {@code biblioteca_http_solicitudes_total}
+ *       (por {@code metodo}, {@code ruta} y {@code estado}).</li>
+ *   <li>{@link #resumen()}: percentiles y conteos por ruta, para graficar en las páginas
+ *       estáticas.</li>
+ *   <li>Las solicitudes que no llegan a un endpoint (archivos estáticos, 404, o rechazadas por
+ *       un {@code before}) se agrupan bajo {@value #SIN_RUTA}.</li>
+ * </ul>
+ */
+public final class MetricasRutas {
+
+    /** Ruta que agrupa las solicitudes sin endpoint asociado. */
+    public static final String SIN_RUTA = "(sin ruta)";
+
+    /** Códigos de estado contados individualmente: {@code [100, 600)}. */
+    private static final int PRIMER_ESTADO = 100;
+    private static final int ESTADOS = 500;
+
+    private static final HandlerType[] METODOS = HandlerType.values();
+
+    /** Por plantilla de ruta, las métricas de cada método (índice = {@code ordinal()}). */
+    private static final ConcurrentHashMap<String, AtomicReferenceArray<Ruta>> RUTAS = new ConcurrentHashMap<>();
+
+    /** Instante de inicio de la medición, para calcular solicitudes por segundo. */
+    private static final long INICIO = System.nanoTime();
+
+    private MetricasRutas() { }
+
+    /** Métricas de una ruta y un método. */
+    private static final class Ruta {
+        final String metodo;
+        final String ruta;
+        final Histograma latencia = new Histograma();
+        final AtomicLongArray porEstado = new AtomicLongArray(ESTADOS);
+
+        Ruta(String metodo, String ruta) {
+            this.metodo = metodo;
+            this.ruta = ruta;
+        }
+    }
+
+    /**
+     * Registra el manejador que mide las solicitudes. Conviene invocarlo antes que el resto de
+     * las rutas, para medir también las rechazadas por otros {@code before}.
+     *
+     * @param app instancia de servidor Javalin, aún sin iniciar.
+     */
+    public static void registrar(Javalin app) {
+        app.after(MetricasRutas::medir);
+    }
+
+    private static void medir(Context ctx) {
+        String plantilla = ctx.endpointHandlerPath();
+        medir(ctx, plantilla == null || !plantilla.startsWith("/") ? SIN_RUTA : plantilla);
+    }
+
+    /**
+     * Mide una solicitud que un {@code before} corta con {@code skipRemainingHandlers()}: en ese
+     * caso Javalin no ejecuta los {@code after}.
+     *
+     * @param ctx solicitud ya respondida.
+     */
+    static void medirRechazada(Context ctx) {
+        medir(ctx, SIN_RUTA);
+    }
+
+    private static void medir(Context ctx, String plantilla) {
+        Request base = Request.getBaseRequest(ctx.req());
+        if (base == null) return;
+        long nanos = System.nanoTime() - base.getBeginNanoTime();
+
+        Ruta r = ruta(plantilla, ctx.method());
+        r.latencia.registrar(nanos);
+        int estado = Math.max(PRIMER_ESTADO, Math.min(ctx.statusCode(), PRIMER_ESTADO + ESTADOS - 1));
+        r.porEstado.incrementAndGet(estado - PRIMER_ESTADO);
+    }
+
+    private static Ruta ruta(String plantilla, HandlerType metodo) {
+        AtomicReferenceArray<Ruta> porMetodo = RUTAS.get(plantilla);
+        if (porMetodo == null) {
+            porMetodo = RUTAS.computeIfAbsent(plantilla, p -> new AtomicReferenceArray<>(METODOS.length));
+        }
+        Ruta r = porMetodo.get(metodo.ordinal());
+        if (r == null) {
+            porMetodo.compareAndSet(metodo.ordinal(), null, new Ruta(metodo.name(), plantilla));
+            r = porMetodo.get(metodo.ordinal());
+        }
+        return r;
+    }
+
+    /** Rutas con al menos una solicitud, ordenadas por plantilla y método. */
+    private static List<Ruta> rutas() {
+        List<Ruta> lista = new ArrayList<>();
+        for (AtomicReferenceArray<Ruta> porMetodo : RUTAS.values()) {
+            for (int i = 0; i < porMetodo.length(); i++) {
+                Ruta r = porMetodo.get(i);
+                if (r != null) lista.add(r);
+            }
+        }
+        lista.sort(Comparator.comparing((Ruta r) -> r.ruta).thenComparing(r -> r.metodo));
+        return lista;
+    }
+
+    /**
+     * Escribe las métricas HTTP en formato Prometheus.
+     *
+     * @param t escritor de destino.
+     */
+    public static void exportar(TextoPrometheus t) {
+        List<Ruta> lista = rutas();
+
+        t.familia("biblioteca_http_duracion_segundos", "histogram",
+                "Latencia de las solicitudes HTTP por plantilla de ruta.");
+        for (Ruta r : lista) {
+            t.histograma("biblioteca_http_duracion_segundos", r.latencia, "metodo", r.metodo, "ruta", r.ruta);
+        }
+
+        t.familia("biblioteca_http_solicitudes_total", "counter",
+                "Solicitudes HTTP atendidas por plantilla de ruta y codigo de estado.");
+        for (Ruta r : lista) {
+            for (int i = 0; i < ESTADOS; i++) {
+                long n = r.porEstado.get(i);
+                if (n > 0) {
+                    t.muestra("biblioteca_http_solicitudes_total", n,
+                            "metodo", r.metodo, "ruta", r.ruta, "estado", String.valueOf(PRIMER_ESTADO + i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Resumen por ruta para graficar.
+     *
+     * @return {@code segundos} (tiempo medido) y {@code rutas}: por cada ruta y método,
+     *         {@code solicitudes}, {@code porSegundo}, {@code porEstado} y las latencias
+     *         {@code media}, {@code p50}, {@code p90}, {@code p99}, {@code p999} y {@code maxima}
+     *         en milisegundos.
+     */
+    public static Map<String, Object> resumen() {
+        double segundos = (System.nanoTime() - INICIO) / 1e9;
+        List<Map<String, Object>> filas = new ArrayList<>();
+        for (Ruta r : rutas()) {
+            Histograma h = r.latencia;
+            long n = h.cantidad();
+            Map<String, Long> porEstado = new LinkedHashMap<>();
+            for (int i = 0; i < ESTADOS; i++) {
+                long c = r.porEstado.get(i);
+                if (c > 0) porEstado.put(String.valueOf(PRIMER_ESTADO + i), c);
+            }
+
+            Map<String, Object> fila = new LinkedHashMap<>();
+            fila.put("metodo", r.metodo);
+            fila.put("ruta", r.ruta);
+            fila.put("solicitudes", n);
+            fila.put("porSegundo", n / segundos);
+            fila.put("porEstado", porEstado);
+            fila.put("media", n == 0 ? 0.0 : h.suma() / 1e6 / n);
+            fila.put("p50", h.percentil(0.50) / 1e6);
+            fila.put("p90", h.percentil(0.90) / 1e6);
+            fila.put("p99", h.percentil(0.99) / 1e6);
+            fila.put("p999", h.percentil(0.999) / 1e6);
+            fila.put("maxima", h.maximo() / 1e6);
+            filas.add(fila);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("segundos", segundos);
+        out.put("rutas", filas);
+        return out;
+    }
+}
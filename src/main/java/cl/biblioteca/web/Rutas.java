@@ -1,26 +1,121 @@
 package cl.biblioteca.web;
 
 import cl.biblioteca.dominio.*;
+import cl.biblioteca.metricas.TextoPrometheus;
 import cl.biblioteca.persistencia.JpaUtil;
+import cl.biblioteca.persistencia.ProveedorConexionesSQLite;
+import cl.biblioteca.servicio.CacheReportes;
+import cl.biblioteca.servicio.CacheSocios;
+import cl.biblioteca.servicio.ColaPrestamos;
+import cl.biblioteca.servicio.IndiceDisponibilidad;
+import cl.biblioteca.servicio.LibroMultas;
+import cl.biblioteca.servicio.NuevoPrestamo;
+import cl.biblioteca.servicio.PaginaInventario;
+import cl.biblioteca.servicio.PaginaVencidos;
+import cl.biblioteca.servicio.ParametrosMulta;
+import cl.biblioteca.servicio.RegistroCadenasMulta;
+import cl.biblioteca.servicio.ReglasMulta;
+import cl.biblioteca.servicio.ServicioBusqueda;
+import cl.biblioteca.servicio.ServicioMultas;
+import cl.biblioteca.servicio.ServicioPrestamos;
 import cl.biblioteca.servicio.ServicioReportes;
+import cl.biblioteca.servicio.ServicioSocios;
+import cl.biblioteca.servicio.SimuladorMultas;
 import cl.biblioteca.servicio.decorator.*;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.OptimisticLockException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Define y registra las <strong>rutas HTTP</strong> de la aplicación (capa web).
  *
  * <h2>Resumen de endpoints</h2>
  * <ul>
+ *   <li><strong>GET /api/ready</strong> &rarr; estado del arranque (<code>listo</code>,
+ *       <code>iniciando</code> o <code>error</code>); ver {@link #registrarDisponibilidad}.</li>
  *   <li><strong>GET /</strong> &rarr; redirige a <code>/public/index.html</code>
  *       (recursos estáticos servidos desde el classpath).</li>
  *   <li><strong>GET /api/inventory</strong> &rarr; devuelve un JSON con el inventario
  *       resumido: cada fila posee las claves <code>type</code>, <code>title</code>, <code>meta</code>.
- *       La estructura coincide con el sistema legado (útil para el refactor con Visitor).</li>
+ *       La estructura coincide con el sistema legado (útil para el refactor con Visitor).
+ *       La respuesta se transmite fila a fila, sin materializar el catálogo en memoria.
+ *       Con <code>?limit=</code> y/o <code>?after=&lt;tipo,id&gt;</code> responde una página
+ *       <code>{"items": [...], "next": "..."}</code> usando paginación por clave; sólo la
+ *       primera página con el límite por defecto se guarda en caché.</li>
+ *   <li><strong>GET /api/inventory/search?q=&amp;limit=</strong> &rarr; búsqueda de texto completo
+ *       (con prefijos) sobre título y autor/editor de todo el catálogo, ordenada por relevancia.</li>
+ *   <li><strong>GET /api/inventory/{tipo}/{id}/availability</strong> &rarr; disponibilidad del
+ *       material (<code>disponible</code> y, si está prestado, <code>prestamoId</code>), resuelta
+ *       en memoria sin consultar la base de datos.</li>
  *   <li><strong>POST /api/seed</strong> &rarr; inserta datos mínimos de ejemplo
  *       (libro, revista, video, dos socios). Útil en entornos sin script de carga.</li>
+ *   <li><strong>POST /api/loans</strong> &rarr; crea un préstamo
+ *       (<code>{"socioId", "idMaterial", "tipoMaterial", "dias"}</code>). Se encola y se confirma
+ *       junto con los préstamos concurrentes en una sola transacción; responde <code>201</code>
+ *       con el id cuando el lote es durable, o <code>409</code> si el material ya está prestado
+ *       (<code>503</code> si el escritor de la cola no está activo). <strong>GET /api/loans/queue</strong> resume la cola.</li>
+ *   <li><strong>POST /api/loans/{id}/return</strong> &rarr; registra la devolución (hoy, o
+ *       <code>fecha</code> del cuerpo). <strong>POST /api/loans/{id}/renew</strong> extiende el
+ *       vencimiento en <code>dias</code>. Ambos aceptan <code>version</code> (bloqueo optimista) y
+ *       responden <code>409</code> si el préstamo cambió entretanto o ya estaba devuelto.</li>
+ *   <li><strong>GET /api/loans/overdue?after=&amp;limit=</strong> &rarr; préstamos abiertos vencidos,
+ *       por vencimiento, con paginación por clave (<code>{"items": [...], "next": "..."}</code>).</li>
+ *   <li><strong>POST /api/loans/batch</strong> &rarr; crea muchos préstamos en una transacción.
+ *       Cuerpo: <code>{"prestamos": [{"socioId", "idMaterial", "tipoMaterial", "dias"}, ...]}</code>;
+ *       en lugar de <code>dias</code> puede indicarse <code>fechaInicio</code>,
+ *       <code>fechaVencimiento</code> y <code>fechaDevolucion</code> (migraciones). Responde
+ *       <code>201</code> con los ids asignados; si un elemento es inválido (<code>400</code>) o
+ *       pide un material ya prestado (<code>409</code>) no se crea ninguno.</li>
+ *   <li><strong>POST /api/fees/batch</strong> &rarr; multas de muchos préstamos en una solicitud.
+ *       Cuerpo: <code>{"ids": [...]}</code> o <code>{"desde": "AAAA-MM-DD", "hasta": "AAAA-MM-DD"}</code>
+ *       (préstamos devueltos en ese rango), más las banderas <code>exencionFeriado</code>,
+ *       <code>descuentoPremium</code> y <code>sobrecargoAltaDemanda</code>. La respuesta se
+ *       transmite préstamo a préstamo. Con rango y <code>"soloTotales": true</code> devuelve sólo
+ *       cantidad y monto total, calculados con el motor columnar.</li>
+ *   <li><strong>GET /api/fees/config</strong> &rarr; parámetros vigentes de las reglas de multa
+ *       (<code>costoPorDia</code>, <code>porcentajeDescuento</code>, <code>umbralDias</code>,
+ *       <code>recargoFijo</code>), leídos de <code>multas.properties</code> al arrancar.</li>
+ *   <li><strong>PUT /api/fees/config</strong> &rarr; reemplaza esos parámetros en caliente, sin
+ *       reiniciar (los campos omitidos conservan su valor); los cálculos posteriores usan las
+ *       nuevas cadenas.</li>
+ *   <li><strong>POST /api/fees/simulate</strong> &rarr; simulación <em>what-if</em> de recaudación:
+ *       evalúa cada combinación de reglas para cada juego de parámetros de la grilla
+ *       (<code>costosPorDia</code>, <code>porcentajesDescuento</code>, <code>umbralesDias</code>,
+ *       <code>recargosFijos</code>; las listas omitidas toman el valor vigente), opcionalmente
+ *       sobre los préstamos devueltos entre <code>desde</code> y <code>hasta</code>. Corre en
+ *       segundo plano: responde <code>202</code> con el id de la simulación (o <code>503</code>
+ *       si hay demasiadas pendientes). <strong>GET /api/fees/simulate/{id}</strong> informa su
+ *       estado y, al completarse, el total, los percentiles y la diferencia con la política
+ *       vigente por escenario.</li>
+ *   <li><strong>GET /api/fees/ledger</strong> &rarr; progreso o resultado de la última corrida del
+ *       libro de multas devengadas (nocturna). <strong>POST /api/fees/ledger/run</strong> la lanza
+ *       a pedido en segundo plano (<code>202</code>, o <code>409</code> si ya está en curso).</li>
+ *   <li><strong>GET /api/members/{id}/balance</strong> &rarr; saldo de multas del socio según el
+ *       libro (préstamos abiertos acumulados a la fecha de corte).</li>
+ *   <li><strong>GET /api/members/{id}/summary</strong> &rarr; cuenta del socio: préstamos activos y
+ *       vencidos, y multas devengadas (abiertos, a hoy) y finales (devueltos). Se calcula con una
+ *       consulta y se cachea por socio hasta su próximo préstamo o devolución.</li>
+ *   <li><strong>GET /api/cache/stats</strong> &rarr; versión del catálogo, aciertos/fallos de la
+ *       caché de reportes y cantidad de solicitudes coalescidas; en <code>socios</code>, la caché
+ *       de resúmenes por socio; en <code>segundoNivel</code>, aciertos/fallos por región de la
+ *       caché de segundo nivel de Hibernate y de su caché de consultas.</li>
+ *   <li><strong>GET /api/db/pool</strong> &rarr; conexiones activas, inactivas y en espera de los
+ *       pools de escritura y lectura.</li>
+ *   <li><strong>GET /api/metrics</strong> &rarr; métricas en formato de texto de Prometheus:
+ *       latencia, filas y errores por sentencia SQL; sesiones, conexiones y transacciones de
+ *       Hibernate; estado de los pools; aciertos de la caché de segundo nivel; y latencia y
+ *       solicitudes por ruta HTTP ({@link MetricasRutas}).</li>
+ *   <li><strong>GET /api/metrics/routes</strong> &rarr; resumen JSON por ruta HTTP: solicitudes,
+ *       solicitudes por segundo, conteo por código de estado y percentiles de latencia (ms).</li>
  *   <li><strong>GET /api/fee-demo</strong> &rarr; endpoint de demostración del cálculo
  *       de multas con banderas (legado), a refactorizar luego con Decorator.</li>
  * </ul>
@@ -30,10 +125,47 @@ import java.util.*;
  *   <li>Esta clase no contiene lógica de negocio: delega en servicios y entidades.</li>
  *   <li>Si se usa <code>hibernate.hbm2ddl.auto=create-drop</code> + <code>seed.sql</code>, el
  *       endpoint <code>/api/seed</code> es opcional.</li>
+ *   <li>Los reportes de inventario responden con <code>ETag</code> fuerte y atienden
+ *       <code>If-None-Match</code> con <code>304</code> (ver {@link CacheReportes}); toda ruta
+ *       que escriba datos debe invocar {@link CacheReportes#registrarCambio()}.</li>
  * </ul>
  */
 public class Rutas {
 
+    /**
+     * Registra la ruta de disponibilidad y bloquea la API mientras la aplicación arranca.
+     *
+     * <p><strong>GET /api/ready</strong> responde <code>200</code> con
+     * <code>{"estado": "listo"}</code> cuando {@code arranque} terminó, <code>503</code> con
+     * <code>"iniciando"</code> mientras tanto, o <code>500</code> con <code>"error"</code> si
+     * falló. Mientras no esté listo, el resto de <code>/api/*</code> responde <code>503</code> con
+     * <code>Retry-After</code>; los archivos estáticos se sirven desde el primer momento.</p>
+     *
+     * @param app      instancia de servidor Javalin, aún sin iniciar.
+     * @param arranque preparación de la base de datos en curso.
+     */
+    public static void registrarDisponibilidad(Javalin app, CompletableFuture<?> arranque) {
+        app.get("/api/ready", ctx -> {
+            if (!arranque.isDone()) {
+                ctx.status(503).json(Map.of("estado", "iniciando"));
+            } else if (arranque.isCompletedExceptionally()) {
+                Throwable causa = arranque.handle((v, e) -> e.getCause() != null ? e.getCause() : e).join();
+                ctx.status(500).json(Map.of("estado", "error", "error", String.valueOf(causa)));
+            } else {
+                ctx.json(Map.of("estado", "listo"));
+            }
+        });
+
+        app.before("/api/*", ctx -> {
+            if ((!arranque.isDone() || arranque.isCompletedExceptionally()) && !"/api/ready".equals(ctx.path())) {
+                ctx.header(Header.RETRY_AFTER, "1");
+                ctx.status(503).json(Map.of("error", "La aplicación no está lista (ver /api/ready)"));
+                MetricasRutas.medirRechazada(ctx);
+                ctx.skipRemainingHandlers();
+            }
+        });
+    }
+
     /**
      * Registra todas las rutas sobre una instancia de {@link Javalin}.
      *
@@ -45,8 +177,62 @@ public class Rutas {
 
         // Inventario resumido (JSON) — mantiene el formato del sistema legado
         app.get("/api/inventory", ctx -> {
-            List<Map<String, Object>> inv = new ServicioReportes().resumenInventario();
-            ctx.json(inv);
+            String after = ctx.queryParam("after");
+            String limit = ctx.queryParam("limit");
+
+            // Modo paginado: ?after=<tipo,id>&limit=<n>
+            if (after != null || limit != null) {
+                int limite = limit == null
+                        ? ServicioReportes.LIMITE_POR_DEFECTO
+                        : ctx.queryParamAsClass("limit", Integer.class).get();
+                try {
+                    // Sólo la primera página con el límite por defecto pasa por la caché: los
+                    // cursores y límites vienen del cliente y llenarían el LRU de reportes.
+                    if (after == null && limite == ServicioReportes.LIMITE_POR_DEFECTO) {
+                        var e = CacheReportes.obtener("inventory?limit=" + limite,
+                                () -> ctx.jsonMapper().toJsonString(
+                                        new ServicioReportes().paginaInventario(null, limite), PaginaInventario.class));
+                        responderCacheado(ctx, e);
+                    } else {
+                        ctx.json(new ServicioReportes().paginaInventario(after, limite));
+                    }
+                } catch (IllegalArgumentException e) {
+                    ctx.status(400).json(Map.of("error", e.getMessage()));
+                }
+                return;
+            }
+
+            // Modo por defecto: mismo arreglo JSON del legado, transmitido a medida que se lee.
+            // No se retiene en caché; el ETag depende sólo de la versión del catálogo.
+            if (noModificado(ctx, CacheReportes.etagVersion("inventory"))) return;
+            ctx.contentType("application/json; charset=utf-8");
+            new ServicioReportes().escribirInventario(ctx.outputStream());
+        });
+
+        // Búsqueda indexada (FTS5) sobre título y autor/editor
+        app.get("/api/inventory/search", ctx -> {
+            String q = ctx.queryParam("q");
+            int limite = ctx.queryParam("limit") == null
+                    ? ServicioBusqueda.LIMITE_POR_DEFECTO
+                    : ctx.queryParamAsClass("limit", Integer.class).get();
+            ctx.json(new ServicioBusqueda().buscar(q, limite));
+        });
+
+        // Disponibilidad de un material: consulta en memoria, sin base de datos
+        app.get("/api/inventory/{tipo}/{id}/availability", ctx -> {
+            String tipo = ctx.pathParam("tipo");
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            if (!ServicioReportes.TIPOS.contains(tipo)) {
+                ctx.status(400).json(Map.of("error", "Tipo de material desconocido: " + tipo));
+                return;
+            }
+            long prestamo = IndiceDisponibilidad.prestamoActivo(tipo, id);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("tipo", tipo);
+            out.put("id", id);
+            out.put("disponible", prestamo == 0);
+            out.put("prestamoId", prestamo > 0 ? prestamo : null);
+            ctx.json(out);
         });
 
         // Semilla de datos de ejemplo (opcional si tienes seed.sql en el arranque)
@@ -89,6 +275,7 @@ public class Rutas {
                 em.persist(t);
 
                 tx.commit();
+                CacheReportes.registrarCambio();
                 ctx.status(201);
             } catch (Exception e) {
                 if (tx.isActive()) tx.rollback();
@@ -98,12 +285,128 @@ public class Rutas {
             }
         });
 
+        app.get("/api/cache/stats", ctx -> {
+            Map<String, Object> out = new LinkedHashMap<>(CacheReportes.estadisticas());
+            out.put("socios", CacheSocios.estadisticas());
+            out.put("segundoNivel", JpaUtil.estadisticasCache());
+            ctx.json(out);
+        });
+
+        app.get("/api/db/pool", ctx -> ctx.json(ProveedorConexionesSQLite.estadisticas()));
+
+        app.get("/api/metrics", ctx -> {
+            TextoPrometheus texto = new TextoPrometheus();
+            MetricasRutas.exportar(texto);
+            JpaUtil.exportarMetricas(texto);
+            ctx.contentType(TextoPrometheus.TIPO_CONTENIDO).result(texto.toString());
+        });
+
+        app.get("/api/metrics/routes", ctx -> ctx.json(MetricasRutas.resumen()));
+
         app.get("/api/fee-demo", ctx -> ctx.redirect("/public/multas.html"));
 
         app.get("/api/inventory/stats", ctx -> {
-            String json = new ServicioReportes().estadisticasInventarioComoJson();
-            ctx.contentType("application/json; charset=utf-8");
-            ctx.result(json);
+            // Agregados SQL por defecto: mismo JSON que el recorrido con visitante, sin hidratar
+            // entidades. ?modo=visitante fuerza el recorrido paralelo con VisitanteMaterial.
+            boolean visitante = "visitante".equals(ctx.queryParam("modo"));
+            var e = visitante
+                    ? CacheReportes.obtener("inventory/stats?modo=visitante",
+                            () -> new ServicioReportes().estadisticasInventarioComoJson())
+                    : CacheReportes.obtener("inventory/stats",
+                            () -> new ServicioReportes().estadisticasInventarioAgregadasComoJson());
+            responderCacheado(ctx, e);
+        });
+
+        app.get("/api/fees/config", ctx -> ctx.json(RegistroCadenasMulta.parametros()));
+
+        app.put("/api/fees/config", ctx -> {
+            // Campos omitidos conservan su valor vigente
+            SolicitudParametrosMulta sol = ctx.bodyAsClass(SolicitudParametrosMulta.class);
+            ParametrosMulta vigentes = RegistroCadenasMulta.parametros();
+            try {
+                RegistroCadenasMulta.actualizar(new ParametrosMulta(
+                        Objects.requireNonNullElse(sol.costoPorDia(), vigentes.costoPorDia()),
+                        Objects.requireNonNullElse(sol.porcentajeDescuento(), vigentes.porcentajeDescuento()),
+                        Objects.requireNonNullElse(sol.umbralDias(), vigentes.umbralDias()),
+                        Objects.requireNonNullElse(sol.recargoFijo(), vigentes.recargoFijo())));
+                ctx.json(RegistroCadenasMulta.parametros());
+            } catch (IllegalArgumentException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        app.post("/api/fees/simulate", ctx -> {
+            SolicitudSimulacion sol = ctx.bodyAsClass(SolicitudSimulacion.class);
+            ParametrosMulta vigentes = RegistroCadenasMulta.parametros();
+            try {
+                if ((sol.desde() == null) != (sol.hasta() == null)) {
+                    throw new IllegalArgumentException("Indique ambos 'desde' y 'hasta', o ninguno");
+                }
+                LocalDate desde = sol.desde() == null ? null : LocalDate.parse(sol.desde());
+                LocalDate hasta = sol.hasta() == null ? null : LocalDate.parse(sol.hasta());
+
+                // Producto cartesiano de los valores pedidos (acotado antes de construirlo)
+                List<Integer> costos = valores(sol.costosPorDia(), vigentes.costoPorDia(), "costosPorDia");
+                List<Double> pcts = valores(sol.porcentajesDescuento(), vigentes.porcentajeDescuento(), "porcentajesDescuento");
+                List<Integer> umbrales = valores(sol.umbralesDias(), vigentes.umbralDias(), "umbralesDias");
+                List<Integer> recargos = valores(sol.recargosFijos(), vigentes.recargoFijo(), "recargosFijos");
+                SimuladorMultas.verificarEscenarios(costos.size(), pcts.size(), umbrales.size(), recargos.size());
+
+                List<ParametrosMulta> grilla = new ArrayList<>();
+                for (int costo : costos)
+                    for (double pct : pcts)
+                        for (int umbral : umbrales)
+                            for (int recargo : recargos)
+                                grilla.add(new ParametrosMulta(costo, pct, umbral, recargo));
+
+                long id = SimuladorMultas.lanzar(desde, hasta, grilla);
+                ctx.header("Location", "/api/fees/simulate/" + id);
+                ctx.status(202).json(SimuladorMultas.estado(id).orElseThrow());
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            } catch (RejectedExecutionException e) {
+                ctx.status(503).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        app.get("/api/fees/simulate/{id}", ctx -> {
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            SimuladorMultas.estado(id).ifPresentOrElse(ctx::json,
+                    () -> ctx.status(404).json(Map.of("error", "Simulación no encontrada: " + id)));
+        });
+
+        app.get("/api/fees/ledger", ctx -> ctx.json(LibroMultas.estado()));
+
+        app.post("/api/fees/ledger/run", ctx -> {
+            boolean lanzada = LibroMultas.ejecutarAhora();
+            ctx.status(lanzada ? 202 : 409).json(LibroMultas.estado());
+        });
+
+        app.get("/api/members/{id}/balance", ctx -> {
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            Map<String, Object> saldo = LibroMultas.saldoSocio(id);
+            if ((Long) saldo.get("prestamos") == 0) {
+                var em = JpaUtil.emLectura();
+                try {
+                    if (em.find(Socio.class, id) == null) {
+                        ctx.status(404).json(Map.of("error", "Socio no encontrado: " + id));
+                        return;
+                    }
+                } finally {
+                    em.close();
+                }
+            }
+            ctx.json(saldo);
+        });
+
+        app.get("/api/members/{id}/summary", ctx -> {
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            Map<String, Object> resumen = new ServicioSocios().resumen(id, LocalDate.now());
+            if (resumen == null) {
+                ctx.status(404).json(Map.of("error", "Socio no encontrado: " + id));
+                return;
+            }
+            ctx.json(resumen);
         });
 
         // En cl.biblioteca.web.Rutas#registrar(Javalin app)
@@ -116,57 +419,253 @@ public class Rutas {
             boolean descuentoPremium      = parseBool(ctx.queryParam("descuentoPremium"));
             boolean sobrecargoAltaDemanda = parseBool(ctx.queryParam("sobrecargoAltaDemanda"));
 
-            var em = JpaUtil.em();
+            // Préstamo y socio (necesario para el descuento premium) en una sola consulta
+            Prestamo p = ServicioMultas.prestamoConSocio(id);
+            if (p == null) {
+                ctx.status(404).json(Map.of("error", "Prestamo no encontrado: " + id));
+                return;
+            }
+
+            // Cadena Decorator (orden legado): Base -> Exención -> Descuento -> Sobrecargo,
+            // evaluada una sola vez registrando el monto tras cada capa
+            var reglas = new ReglasMulta(exencionFeriado, descuentoPremium, sobrecargoAltaDemanda);
+            DesgloseMulta d = ServicioMultas.cadena(reglas).evaluar(p);
+            double[] m = ServicioMultas.desgloseLegado(d);
+            long diasAtraso = d.diasAtraso();
+
+            ctx.contentType("application/json; charset=utf-8");
+            ctx.json(Map.of(
+                    "prestamoId", id,
+                    "reglas", Map.of(
+                            "exencionFeriado", exencionFeriado,
+                            "descuentoPremium", descuentoPremium,
+                            "sobrecargoAltaDemanda", sobrecargoAltaDemanda
+                    ),
+                    "diasAtraso", diasAtraso,
+                    "desglose", Map.of(
+                            "base", m[0],
+                            "despuesExencion", m[1],
+                            "despuesDescuento", m[2],
+                            "final", m[3]
+                    ),
+                    "monto", m[3]
+            ));
+        });
+
+        // Préstamo individual: confirmación agrupada con los concurrentes (sin bloquear el hilo HTTP)
+        app.post("/api/loans", ctx -> {
+            NuevoPrestamo nuevo;
             try {
-                Prestamo p = em.find(Prestamo.class, id);
-                if (p == null) {
-                    ctx.status(404).json(Map.of("error", "Prestamo no encontrado: " + id));
-                    return;
+                nuevo = ctx.bodyAsClass(SolicitudPrestamo.class).comoNuevoPrestamo();
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+                return;
+            }
+            ctx.future(() -> ColaPrestamos.encolar(nuevo).handle((id, error) -> {
+                if (error == null) {
+                    ctx.status(201).json(Map.of("id", id));
+                } else if (error instanceof IllegalArgumentException) {
+                    ctx.status(400).json(Map.of("error", error.getMessage()));
+                } else if (error instanceof IllegalStateException) {
+                    ctx.status(409).json(Map.of("error", error.getMessage()));
+                } else if (error instanceof RejectedExecutionException) {
+                    ctx.status(503).json(Map.of("error", error.getMessage()));
+                } else {
+                    ctx.status(500).json(Map.of("error", "No se pudo registrar el préstamo"));
                 }
+                return null;
+            }));
+        });
 
-                // Construcción de cadena Decorator (orden legado): Base -> Exención -> Descuento -> Sobrecargo
-                var base = new MultaBase();
-                var c1 = exencionFeriado       ? new ExencionFeriado(base) : base;
-                var c2 = descuentoPremium      ? new DescuentoPremium(c1) : c1;
-                var c3 = sobrecargoAltaDemanda ? new SobrecargoAltaDemanda(c2) : c2;
-
-                double m0 = base.calcular(p);
-                double m1 = c1.calcular(p);
-                double m2 = c2.calcular(p);
-                double m3 = c3.calcular(p);
-
-                long diasAtraso = calcularDiasAtraso(p);
-
-                ctx.contentType("application/json; charset=utf-8");
-                ctx.json(Map.of(
-                        "prestamoId", id,
-                        "reglas", Map.of(
-                                "exencionFeriado", exencionFeriado,
-                                "descuentoPremium", descuentoPremium,
-                                "sobrecargoAltaDemanda", sobrecargoAltaDemanda
-                        ),
-                        "diasAtraso", diasAtraso,
-                        "desglose", Map.of(
-                                "base", m0,
-                                "despuesExencion", m1,
-                                "despuesDescuento", m2,
-                                "final", m3
-                        ),
-                        "monto", m3
-                ));
-            } finally {
-                em.close();
+        app.get("/api/loans/queue", ctx -> ctx.json(ColaPrestamos.estadisticas()));
+
+        app.post("/api/loans/{id}/return", ctx -> {
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            SolicitudDevolucion sol = ctx.body().isBlank()
+                    ? new SolicitudDevolucion(null, null)
+                    : ctx.bodyAsClass(SolicitudDevolucion.class);
+            try {
+                LocalDate fecha = sol.fecha() == null ? LocalDate.now() : LocalDate.parse(sol.fecha());
+                responderPrestamo(ctx, id, new ServicioPrestamos().devolver(id, fecha, sol.version()));
+            } catch (DateTimeParseException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            } catch (IllegalStateException | OptimisticLockException e) {
+                ctx.status(409).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        app.post("/api/loans/{id}/renew", ctx -> {
+            long id = ctx.pathParamAsClass("id", Long.class).get();
+            SolicitudRenovacion sol = ctx.bodyAsClass(SolicitudRenovacion.class);
+            try {
+                if (sol.dias() == null) throw new IllegalArgumentException("Indique 'dias'");
+                responderPrestamo(ctx, id, new ServicioPrestamos().renovar(id, sol.dias(), sol.version()));
+            } catch (IllegalArgumentException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            } catch (IllegalStateException | OptimisticLockException e) {
+                ctx.status(409).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        app.get("/api/loans/overdue", ctx -> {
+            int limite = ctx.queryParam("limit") == null
+                    ? ServicioPrestamos.LIMITE_POR_DEFECTO
+                    : ctx.queryParamAsClass("limit", Integer.class).get();
+            try {
+                PaginaVencidos pagina = new ServicioPrestamos().vencidos(ctx.queryParam("after"), limite, LocalDate.now());
+                ctx.json(pagina);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        // Préstamos en lote: una transacción con inserciones JDBC agrupadas
+        app.post("/api/loans/batch", ctx -> {
+            SolicitudLotePrestamos sol = ctx.bodyAsClass(SolicitudLotePrestamos.class);
+            try {
+                if (sol.prestamos() == null || sol.prestamos().isEmpty()) {
+                    throw new IllegalArgumentException("Indique 'prestamos'");
+                }
+                List<NuevoPrestamo> nuevos = new ArrayList<>(sol.prestamos().size());
+                for (SolicitudPrestamo s : sol.prestamos()) nuevos.add(s.comoNuevoPrestamo());
+
+                List<Long> ids = new ServicioPrestamos().prestarLote(nuevos);
+                ctx.status(201).json(Map.of("cantidad", ids.size(), "ids", ids));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
+            } catch (IllegalStateException e) {
+                ctx.status(409).json(Map.of("error", e.getMessage()));
+            }
+        });
+
+        // Multas en lote: ids explícitos o préstamos devueltos en un rango de fechas
+        app.post("/api/fees/batch", ctx -> {
+            SolicitudLoteMultas sol = ctx.bodyAsClass(SolicitudLoteMultas.class);
+            var reglas = new ReglasMulta(
+                    Boolean.TRUE.equals(sol.exencionFeriado()),
+                    Boolean.TRUE.equals(sol.descuentoPremium()),
+                    Boolean.TRUE.equals(sol.sobrecargoAltaDemanda()));
+            var servicio = new ServicioMultas();
+            try {
+                if (sol.ids() != null) {
+                    if (sol.ids().size() > ServicioMultas.MAXIMO_IDS) {
+                        throw new IllegalArgumentException("Máximo " + ServicioMultas.MAXIMO_IDS + " préstamos por solicitud");
+                    }
+                    ctx.contentType("application/json; charset=utf-8");
+                    servicio.escribirLote(sol.ids(), reglas, ctx.outputStream());
+                } else if (sol.desde() != null && sol.hasta() != null) {
+                    LocalDate desde = LocalDate.parse(sol.desde());
+                    LocalDate hasta = LocalDate.parse(sol.hasta());
+                    if (Boolean.TRUE.equals(sol.soloTotales())) {
+                        ctx.json(servicio.totalizarPorDevolucion(desde, hasta, reglas));
+                        return;
+                    }
+                    ctx.contentType("application/json; charset=utf-8");
+                    servicio.escribirLotePorDevolucion(desde, hasta, reglas, ctx.outputStream());
+                } else {
+                    ctx.status(400).json(Map.of("error", "Indique 'ids' o el rango 'desde'/'hasta'"));
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                ctx.status(400).json(Map.of("error", e.getMessage()));
             }
         });
     }
+
+    /** Cuerpo de {@code POST /api/fees/batch}. */
+    record SolicitudLoteMultas(List<Long> ids, String desde, String hasta, Boolean soloTotales,
+                               Boolean exencionFeriado, Boolean descuentoPremium, Boolean sobrecargoAltaDemanda) { }
+
+    /** Cuerpo (opcional) de {@code POST /api/loans/{id}/return}. */
+    record SolicitudDevolucion(String fecha, Long version) { }
+
+    /** Cuerpo de {@code POST /api/loans/{id}/renew}. */
+    record SolicitudRenovacion(Integer dias, Long version) { }
+
+    /** Responde el estado de un préstamo tras devolverlo o renovarlo, o {@code 404} si no existe. */
+    private static void responderPrestamo(Context ctx, long id, Prestamo p) {
+        if (p == null) {
+            ctx.status(404).json(Map.of("error", "Prestamo no encontrado: " + id));
+            return;
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("prestamoId", p.obtenerId());
+        out.put("fechaVencimiento", String.valueOf(p.obtenerFechaVencimiento()));
+        out.put("fechaDevolucion", p.obtenerFechaDevolucion() == null ? null : p.obtenerFechaDevolucion().toString());
+        out.put("version", p.obtenerVersion());
+        ctx.json(out);
+    }
+
+    /** Cuerpo de {@code POST /api/loans/batch}. */
+    record SolicitudLotePrestamos(List<SolicitudPrestamo> prestamos) { }
+
+    /**
+     * Préstamo de {@code POST /api/loans/batch}: vence a {@code dias} desde {@code fechaInicio}
+     * (hoy si se omite) o en {@code fechaVencimiento}.
+     */
+    record SolicitudPrestamo(Long socioId, Long idMaterial, String tipoMaterial, Integer dias,
+                             String fechaInicio, String fechaVencimiento, String fechaDevolucion) {
+
+        NuevoPrestamo comoNuevoPrestamo() {
+            if (socioId == null || idMaterial == null || tipoMaterial == null) {
+                throw new IllegalArgumentException("Cada préstamo requiere 'socioId', 'idMaterial' y 'tipoMaterial'");
+            }
+            if ((dias == null) == (fechaVencimiento == null)) {
+                throw new IllegalArgumentException("Indique 'dias' o 'fechaVencimiento' en cada préstamo");
+            }
+            LocalDate inicio = fechaInicio == null ? LocalDate.now() : LocalDate.parse(fechaInicio);
+            LocalDate vence = dias != null ? inicio.plusDays(dias) : LocalDate.parse(fechaVencimiento);
+            LocalDate devuelto = fechaDevolucion == null ? null : LocalDate.parse(fechaDevolucion);
+            return new NuevoPrestamo(socioId, idMaterial, tipoMaterial, inicio, vence, devuelto);
+        }
+    }
+
+    /** Cuerpo de {@code POST /api/fees/simulate}; cada lista es un eje de la grilla. */
+    record SolicitudSimulacion(String desde, String hasta, List<Integer> costosPorDia,
+                               List<Double> porcentajesDescuento, List<Integer> umbralesDias,
+                               List<Integer> recargosFijos) { }
+
+    /** Valores de un eje de la simulación, o el vigente si no se indicaron; rechaza elementos {@code null}. */
+    private static <T> List<T> valores(List<T> pedidos, T vigente, String campo) {
+        if (pedidos == null || pedidos.isEmpty()) return List.of(vigente);
+        for (T v : pedidos) {
+            if (v == null) throw new IllegalArgumentException("'" + campo + "' no admite valores nulos");
+        }
+        return pedidos;
+    }
+
+    /** Cuerpo de {@code PUT /api/fees/config}; los campos {@code null} no se modifican. */
+    record SolicitudParametrosMulta(Integer costoPorDia, Double porcentajeDescuento,
+                                    Integer umbralDias, Integer recargoFijo) { }
+
+    /** Responde una entrada de la caché, o {@code 304} si el cliente ya tiene esa versión. */
+    private static void responderCacheado(Context ctx, CacheReportes.Entrada e) {
+        if (noModificado(ctx, e.etag())) return;
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.result(e.cuerpo());
+    }
+
+    /**
+     * Publica el {@code ETag} y, si coincide con {@code If-None-Match}, deja la respuesta en
+     * {@code 304 Not Modified}.
+     *
+     * @return {@code true} si el cliente ya posee la versión vigente y no debe enviarse cuerpo.
+     */
+    private static boolean noModificado(Context ctx, String etag) {
+        ctx.header(Header.ETAG, etag);
+        String inm = ctx.header(Header.IF_NONE_MATCH);
+        if (inm == null) return false;
+        for (String candidato : inm.split(",")) {
+            String c = candidato.trim();
+            if (c.equals("*") || c.equals(etag)) {
+                ctx.status(HttpStatus.NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static boolean parseBool(String v) {
         if (v == null) return false;
         return "1".equals(v) || "true".equalsIgnoreCase(v) || "si".equalsIgnoreCase(v) || "sí".equalsIgnoreCase(v);
     }
-
-    private static long calcularDiasAtraso(Prestamo p) {
-        if (p.obtenerFechaDevolucion() == null || p.obtenerFechaVencimiento() == null) return 0;
-        return Math.max(0, java.time.temporal.ChronoUnit.DAYS.between(
-                p.obtenerFechaVencimiento(), p.obtenerFechaDevolucion()));
-    }
-}
\ No newline at end of file
+}
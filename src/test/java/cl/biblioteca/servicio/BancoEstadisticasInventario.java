@@ -0,0 +1,138 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import org.hibernate.StatelessSession;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Banco de pruebas que compara las dos formas de calcular las estadísticas de inventario:
+ * {@link ServicioReportes#estadisticasInventarioComoJson()} (hidrata y visita cada material) y
+ * {@link ServicioReportes#estadisticasInventarioAgregadasComoJson()} ({@code COUNT}/{@code SUM}).
+ *
+ * <p>
+ * Para cada tamaño de catálogo (por defecto 10.000, 100.000 y 1.000.000 materiales, repartidos
+ * 60 % libros, 25 % revistas y 15 % videos) recarga la base del perfil {@code banco}
+ * ({@code target/banco.db}, sin cachés), verifica que ambos caminos den el mismo JSON y
+ * reporta la mediana de varias ejecuciones tras un calentamiento.
+ * </p>
+ *
+ * <pre>{@code
+ * mvn -q test-compile exec:java@banco-estadisticas
+ * mvn -q test-compile exec:java@banco-estadisticas -Dexec.args="10000 50000"
+ * }</pre>
+ */
+public final class BancoEstadisticasInventario {
+
+    private static final int[] TAMANOS_POR_DEFECTO = {10_000, 100_000, 1_000_000};
+    private static final int CALENTAMIENTO = 3;
+    private static final int MEDICIONES = 5;
+
+    private BancoEstadisticasInventario() { }
+
+    public static void main(String[] args) {
+        System.setProperty("biblioteca.perfil", "banco");
+        int[] tamanos = args.length == 0 ? TAMANOS_POR_DEFECTO
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        JpaUtil.iniciar();
+        try {
+            ServicioReportes reportes = new ServicioReportes();
+            System.out.printf("%12s %16s %16s %10s%n", "materiales", "visitante (ms)", "agregado (ms)", "razón");
+            for (int n : tamanos) {
+                poblar(n);
+                String visitante = reportes.estadisticasInventarioComoJson();
+                String agregado = reportes.estadisticasInventarioAgregadasComoJson();
+                if (!visitante.equals(agregado)) {
+                    throw new IllegalStateException("Resultados distintos:\n" + visitante + "\n" + agregado);
+                }
+                double msVisitante = mediana(reportes::estadisticasInventarioComoJson);
+                double msAgregado = mediana(reportes::estadisticasInventarioAgregadasComoJson);
+                System.out.printf("%12d %16.1f %16.2f %9.0fx%n", n, msVisitante, msAgregado, msVisitante / msAgregado);
+            }
+        } finally {
+            JpaUtil.close();
+        }
+    }
+
+    /** Mediana, en ms, de {@value #MEDICIONES} ejecuciones tras {@value #CALENTAMIENTO} de calentamiento. */
+    private static double mediana(Supplier<String> calculo) {
+        for (int i = 0; i < CALENTAMIENTO; i++) calculo.get();
+        List<Double> ms = new ArrayList<>();
+        for (int i = 0; i < MEDICIONES; i++) {
+            long inicio = System.nanoTime();
+            calculo.get();
+            ms.add((System.nanoTime() - inicio) / 1e6);
+        }
+        ms.sort(null);
+        return ms.get(MEDICIONES / 2);
+    }
+
+    /** Reemplaza el catálogo por {@code n} materiales, con inserciones JDBC en lote. */
+    private static void poblar(int n) {
+        int libros = n * 60 / 100;
+        int revistas = n * 25 / 100;
+        int videos = n - libros - revistas;
+
+        StatelessSession ss = JpaUtil.sesionSinEstadoEscritura();
+        var tx = ss.beginTransaction();
+        try {
+            ss.doWork(con -> {
+                try (Statement st = con.createStatement()) {
+                    st.executeUpdate("delete from Libro");
+                    st.executeUpdate("delete from Revista");
+                    st.executeUpdate("delete from Video");
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "insert into Libro (id, titulo, autorOEditor, isbn, paginas) values (?, ?, ?, ?, ?)")) {
+                    for (int i = 1; i <= libros; i++) {
+                        ps.setLong(1, i);
+                        ps.setString(2, "Libro " + i);
+                        ps.setString(3, "Autor " + (i % 500));
+                        ps.setString(4, "978-" + i);
+                        ps.setInt(5, 50 + i % 900);
+                        ps.addBatch();
+                        if (i % 1000 == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "insert into Revista (id, titulo, autorOEditor, numeroEdicion) values (?, ?, ?, ?)")) {
+                    for (int i = 1; i <= revistas; i++) {
+                        ps.setLong(1, i);
+                        ps.setString(2, "Revista " + i);
+                        ps.setString(3, "Editorial " + (i % 50));
+                        ps.setInt(4, i % 300);
+                        ps.addBatch();
+                        if (i % 1000 == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "insert into Video (id, titulo, autorOEditor, duracionMinutos, formato) values (?, ?, ?, ?, ?)")) {
+                    for (int i = 1; i <= videos; i++) {
+                        ps.setLong(1, i);
+                        ps.setString(2, "Video " + i);
+                        ps.setString(3, "Productora " + (i % 50));
+                        ps.setInt(4, 10 + i % 170);
+                        ps.setString(5, i % 2 == 0 ? "DVD" : "BluRay");
+                        ps.addBatch();
+                        if (i % 1000 == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+            });
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            ss.close();
+        }
+    }
+}
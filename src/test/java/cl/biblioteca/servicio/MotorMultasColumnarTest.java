@@ -0,0 +1,82 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.dominio.Prestamo;
+import cl.biblioteca.dominio.Socio;
+import cl.biblioteca.servicio.decorator.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Equivalencia entre {@link MotorMultasColumnar} y la cadena de decoradores, préstamo a
+ * préstamo, para todas las combinaciones de reglas y porcentajes de descuento no triviales.
+ */
+class MotorMultasColumnarTest {
+
+    private static final double[] PORCENTAJES = {0.0, 0.20, 0.125, 0.115, 0.07, 1.0 / 3, 0.333, 0.015, 0.999, 1.0};
+
+    @Test
+    void coincideConLaCadenaConPorcentajesNoExactos() {
+        Random azar = new Random(42);
+        List<Prestamo> prestamos = new ArrayList<>();
+        ColumnasPrestamos columnas = new ColumnasPrestamos(2_000);
+        LocalDate origen = LocalDate.of(2025, 1, 1);
+        for (int i = 0; i < 2_000; i++) {
+            Socio socio = new Socio();
+            socio.definirPremium(azar.nextBoolean());
+            Prestamo p = new Prestamo();
+            p.definirSocio(socio);
+            LocalDate vence = origen.plusDays(azar.nextInt(365));
+            p.definirFechaVencimiento(vence);
+            p.definirFechaDevolucion(azar.nextInt(10) == 0 ? null : vence.plusDays(azar.nextInt(21) - 5));
+            prestamos.add(p);
+            columnas.agregar(i, p.obtenerFechaVencimiento(), p.obtenerFechaDevolucion(), socio.esPremium());
+        }
+
+        for (double pct : PORCENTAJES) {
+            for (int costo : new int[]{1, 7, 100}) {
+                for (int i = 0; i < 1 << ReglasMulta.CANTIDAD; i++) {
+                    ReglasMulta r = ReglasMulta.desdeIndice(i);
+                    CalculadoraDeMulta cadena = new MultaBase(costo);
+                    if (r.exencionFeriado())       cadena = new ExencionFeriado(cadena);
+                    if (r.descuentoPremium())      cadena = new DescuentoPremium(cadena, pct);
+                    if (r.sobrecargoAltaDemanda()) cadena = new SobrecargoAltaDemanda(cadena, 3, 5);
+
+                    long[] salida = new long[columnas.tamano()];
+                    new MotorMultasColumnar(r, costo, pct, 3, 5).calcular(columnas, salida);
+                    for (int k = 0; k < prestamos.size(); k++) {
+                        long esperado = Math.round(cadena.calcular(prestamos.get(k)) * 100);
+                        assertEquals(esperado, salida[k],
+                                "préstamo " + k + ", reglas " + r + ", descuento " + pct + ", costo " + costo);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void descuentoConFraccionDeCentavoRedondeaComoLaCadena() {
+        ColumnasPrestamos columnas = new ColumnasPrestamos(1);
+        columnas.agregar(1, LocalDate.of(2025, 3, 3), LocalDate.of(2025, 3, 4), true);
+
+        long[] salida = new long[1];
+        new MotorMultasColumnar(new ReglasMulta(false, true, false), 1, 0.125, 3, 200).calcular(columnas, salida);
+        assertEquals(88, salida[0]);
+    }
+
+    @Test
+    void descuentoNoDependeDelRedondeoDeDouble() {
+        // 15 días a $1 con 11,5 %: 1327,5 centavos exactos (en double, 1327,4999...)
+        ColumnasPrestamos columnas = new ColumnasPrestamos(1);
+        columnas.agregar(1, LocalDate.of(2025, 3, 3), LocalDate.of(2025, 3, 18), true);
+
+        long[] salida = new long[1];
+        new MotorMultasColumnar(new ReglasMulta(false, true, false), 1, 0.115, 3, 200).calcular(columnas, salida);
+        assertEquals(1328, salida[0]);
+    }
+}
@@ -0,0 +1,61 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.persistencia.JpaUtil;
+import org.hibernate.StatelessSession;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Planes de SQLite ({@code EXPLAIN QUERY PLAN}) de las consultas paginadas por clave: cada
+ * página debe empezar a leer el índice en el cursor, no al comienzo del rango.
+ */
+class PlanesConsultaTest {
+
+    @BeforeAll
+    static void iniciar() {
+        JpaUtil.iniciar();
+    }
+
+    @AfterAll
+    static void cerrar() {
+        JpaUtil.close();
+    }
+
+    /** SQL que Hibernate genera para una página de {@link ServicioPrestamos#vencidos} con cursor. */
+    @Test
+    void paginaDeVencidosBuscaDesdeElCursorEnElIndice() {
+        String plan = plan("""
+                select p1_0.id, p1_0.socio_id, p1_0.tipoMaterial, p1_0.idMaterial, p1_0.fechaVencimiento
+                from Prestamo p1_0
+                where p1_0.fechaDevolucion is null and p1_0.fechaVencimiento<?
+                  and (p1_0.fechaVencimiento, p1_0.id)>(?, ?)
+                order by p1_0.fechaVencimiento, p1_0.id limit ?""");
+        assertTrue(plan.contains("SEARCH p1_0 USING INDEX idx_prestamo_devolucion"), plan);
+        assertTrue(plan.contains("(fechaVencimiento,id)>(?,?)"), "el cursor debe acotar el inicio del recorrido: " + plan);
+        assertFalse(plan.contains("TEMP B-TREE"), "el orden debe venir del índice: " + plan);
+    }
+
+    private static String plan(String sql) {
+        List<String> pasos = new ArrayList<>();
+        StatelessSession ss = JpaUtil.sesionSinEstado();
+        try {
+            ss.doWork(con -> {
+                try (PreparedStatement ps = con.prepareStatement("explain query plan " + sql);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) pasos.add(rs.getString("detail"));
+                }
+            });
+        } finally {
+            ss.close();
+        }
+        return String.join("\n", pasos);
+    }
+}
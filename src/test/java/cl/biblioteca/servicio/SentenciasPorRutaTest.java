@@ -0,0 +1,94 @@
+package cl.biblioteca.servicio;
+
+import cl.biblioteca.dominio.Prestamo;
+import cl.biblioteca.persistencia.JpaUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cantidad de sentencias SQL por ruta de multas, según {@link Statistics#getPrepareStatementCount()}.
+ * Detecta regresiones N+1 (p. ej., volver a cargar el socio de cada préstamo por separado).
+ *
+ * <p>Usa la base de desarrollo ({@code create-drop} + {@code seed.sql}) en el directorio de
+ * trabajo de las pruebas ({@code target/}).</p>
+ */
+class SentenciasPorRutaTest {
+
+    private static EntityManagerFactory emf;
+    private static Statistics estadisticas;
+
+    @BeforeAll
+    static void iniciar() {
+        emf = JpaUtil.iniciar();
+        estadisticas = emf.unwrap(SessionFactory.class).getStatistics();
+        LibroMultas.prepararTabla();
+    }
+
+    @AfterAll
+    static void cerrar() {
+        JpaUtil.close();
+    }
+
+    @BeforeEach
+    void limpiar() {
+        emf.getCache().evictAll();
+        estadisticas.clear();
+    }
+
+    @Test
+    void multaPorPrestamoCargaPrestamoYSocioEnUnaConsulta() {
+        Prestamo p = ServicioMultas.prestamoConSocio(1);
+        assertTrue(p.obtenerSocio().esPremium());
+        assertEquals(1, estadisticas.getPrepareStatementCount(), "caché de segundo nivel fría");
+
+        estadisticas.clear();
+        ServicioMultas.cadena(new ReglasMulta(true, true, true)).evaluar(ServicioMultas.prestamoConSocio(4));
+        assertEquals(1, estadisticas.getPrepareStatementCount(), "socio ya en caché");
+    }
+
+    @Test
+    void multasEnLoteUsanUnaConsultaPorBloque() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ServicioMultas().escribirLote(List.of(1L, 2L, 3L, 4L, 99L), new ReglasMulta(true, true, true), out);
+        assertTrue(out.toString().contains("\"noEncontrados\":[99]"));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void corridaDelLibroNoConsultaPorPrestamo() {
+        LibroMultas.correr(LocalDate.of(2025, 10, 1));
+        assertEquals("completado", LibroMultas.estado().get("estado"));
+        assertEquals(4L, LibroMultas.estado().get("procesados"));
+        // count(*) y un lote de préstamos con su socio; el upsert va por JDBC (doWork) y
+        // no pasa por el contador de Hibernate
+        assertEquals(2, estadisticas.getPrepareStatementCount());
+
+        estadisticas.clear();
+        assertEquals(2L, LibroMultas.saldoSocio(1).get("prestamos"));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void resumenDeSocioEsUnaConsulta() {
+        CacheSocios.invalidar(2);
+        Map<String, Object> r = new ServicioSocios().resumen(2, LocalDate.of(2025, 10, 1));
+        assertEquals(2, r.get("prestamos"));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+
+        estadisticas.clear();
+        new ServicioSocios().resumen(2, LocalDate.of(2025, 10, 1));
+        assertEquals(0, estadisticas.getPrepareStatementCount(), "resumen en caché");
+    }
+}